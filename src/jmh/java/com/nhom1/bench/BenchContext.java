@@ -0,0 +1,100 @@
+package com.nhom1.bench;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.nhom1.OrderSystemApplication;
+import com.nhom1.entity.Order;
+
+// Khởi động ứng dụng cho benchmark: H2 in-memory riêng cho mỗi trial, không web,
+// không broker (listener container bị dừng ngay sau khi start, relay outbox và gauge
+// độ sâu queue gần như không chạy). Các bean được gọi trực tiếp.
+final class BenchContext {
+
+    private BenchContext() {
+    }
+
+    static ConfigurableApplicationContext start(Map<String, Object> overrides) {
+        return start(WebApplicationType.NONE, overrides);
+    }
+
+    // extraSources: cấu hình bổ sung chỉ dùng khi đo (ví dụ broker giả trong tiến trình)
+    static ConfigurableApplicationContext start(WebApplicationType webType,
+                                                Map<String, Object> overrides,
+                                                Class<?>... extraSources) {
+        Map<String, Object> props = new LinkedHashMap<>();
+        // tắt query cache của H2, nếu không câu aggregate lặp lại trên bảng không đổi sẽ trả từ cache
+        props.put("spring.datasource.url",
+                "jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;QUERY_CACHE_SIZE=0");
+        props.put("spring.jpa.hibernate.ddl-auto", "create");
+        props.put("spring.rabbitmq.port", "1");
+        props.put("spring.rabbitmq.connection-timeout", "100");
+        props.put("app.outbox.poll-interval-ms", "3600000");
+        props.put("app.metrics.refresh-interval-ms", "3600000");
+        props.put("spring.main.banner-mode", "off");
+        props.put("logging.level.root", "WARN");
+        props.put("logging.level.com.nhom1", "WARN");
+        props.put("logging.level.org.springframework.amqp", "OFF");
+        props.putAll(overrides);
+
+        // truyền dạng tham số dòng lệnh để đè application.properties
+        // (builder.properties() chỉ là default, độ ưu tiên thấp nhất)
+        String[] args = props.entrySet().stream()
+                .map(e -> "--" + e.getKey() + "=" + e.getValue())
+                .toArray(String[]::new);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(OrderSystemApplication.class)
+                .sources(extraSources)
+                .web(webType)
+                .logStartupInfo(false)
+                .run(args);
+        context.getBean(RabbitListenerEndpointRegistry.class).stop();
+        return context;
+    }
+
+    // Chèn nhanh count đơn bằng JDBC batch (bỏ qua outbox), cứ mỗi 4 đơn có 1 đơn đã xử lý,
+    // 1 đơn thiếu hàng, 1 đơn đã huỷ và 1 đơn đang chờ
+    static void seedOrders(ConfigurableApplicationContext context, int count) {
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("alter sequence orders_seq restart with " + (count + 1));
+        int chunk = 10_000;
+        for (int from = 0; from < count; from += chunk) {
+            int start = from;
+            int size = Math.min(chunk, count - from);
+            jdbc.batchUpdate(
+                    "insert into orders (id, customer_name, product_id, quantity, total_price, created_at,"
+                            + " status)"
+                            + " values (?, ?, ?, 1, 10.0, current_timestamp, ?)",
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            long id = start + i + 1L;
+                            int kind = (int) (id % 4);
+                            ps.setLong(1, id);
+                            ps.setString(2, "Customer " + id);
+                            ps.setString(3, "P" + (id % 100));
+                            ps.setInt(4, switch (kind) {
+                                case 0 -> Order.EMAIL_SENT | Order.STOCK_UPDATED | Order.LOG_WRITTEN;
+                                case 1 -> Order.EMAIL_SENT | Order.LOG_WRITTEN;
+                                case 2 -> Order.CANCELLED;
+                                default -> 0;
+                            });
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return size;
+                        }
+                    });
+        }
+    }
+}
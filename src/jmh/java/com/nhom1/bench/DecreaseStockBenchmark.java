@@ -0,0 +1,61 @@
+package com.nhom1.bench;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.nhom1.service.InventoryService;
+
+// decreaseStock với nhiều thread cùng lúc: products = 1 là 1 product nóng,
+// products = 64 là tải trải đều. reservation = true dùng StockReservationEngine.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+public class DecreaseStockBenchmark {
+
+    @Param({"false", "true"})
+    public boolean reservation;
+
+    @Param({"1", "64"})
+    public int products;
+
+    private ConfigurableApplicationContext context;
+    private InventoryService inventoryService;
+    private String[] productIds;
+
+    @Setup
+    public void setUp() {
+        context = BenchContext.start(Map.of("app.inventory.reservation.enabled", reservation));
+        inventoryService = context.getBean(InventoryService.class);
+        productIds = new String[products];
+        for (int i = 0; i < products; i++) {
+            productIds[i] = "P" + i;
+            // đủ lớn để không bao giờ hết hàng trong lúc đo
+            inventoryService.createInventory(productIds[i], Integer.MAX_VALUE / 2);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean decreaseStock() {
+        String productId = productIds[ThreadLocalRandom.current().nextInt(productIds.length)];
+        return inventoryService.decreaseStock(productId, 1);
+    }
+}
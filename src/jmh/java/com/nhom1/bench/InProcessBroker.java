@@ -0,0 +1,116 @@
+package com.nhom1.bench;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import com.nhom1.messaging.OrderConsumer;
+import com.nhom1.messaging.OrderCreatedMessage;
+import com.nhom1.messaging.OrderPipelineStages;
+import com.nhom1.messaging.OrderStockProcessedMessage;
+
+// Broker giả trong tiến trình cho load test offline: 1 hàng đợi FIFO, N thread consumer
+// (tương ứng concurrency của listener container), là virtual thread khi chạy với virtual = true
+// giống task executor của listener container thật khi bật spring.threads.virtual.enabled.
+// Message đi qua MessageConverter thật cả chiều gửi lẫn chiều nhận, rồi được gọi thẳng vào
+// handler @RabbitListener.
+// Không mô phỏng routing theo partition, ack/redelivery, prefetch hay TTL của queue chờ
+// (message thử lại được đưa lại hàng đợi ngay).
+public class InProcessBroker {
+
+    private static final Logger log = LoggerFactory.getLogger(InProcessBroker.class);
+
+    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private MessageConverter converter;
+    private OrderConsumer orderConsumer;
+    private OrderPipelineStages pipelineStages;
+    private ExecutorService consumers;
+    private volatile boolean running;
+
+    void publish(Message message) {
+        queue.add(message);
+    }
+
+    void start(MessageConverter converter,
+               OrderConsumer orderConsumer,
+               OrderPipelineStages pipelineStages,
+               int concurrency,
+               boolean virtual) {
+        this.converter = converter;
+        this.orderConsumer = orderConsumer;
+        this.pipelineStages = pipelineStages;
+        this.running = true;
+        this.consumers = virtual
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("broker-consumer-", 0).factory())
+                : Executors.newFixedThreadPool(concurrency, Thread.ofPlatform().name("broker-consumer-", 0).factory());
+        for (int i = 0; i < concurrency; i++) {
+            consumers.execute(this::consumeLoop);
+        }
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        if (consumers != null) {
+            consumers.shutdown();
+            consumers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    int depth() {
+        return queue.size();
+    }
+
+    long delivered() {
+        return delivered.get();
+    }
+
+    long failed() {
+        return failed.get();
+    }
+
+    private void consumeLoop() {
+        while (running) {
+            Message message;
+            try {
+                message = queue.poll(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (message == null) {
+                continue;
+            }
+            try {
+                dispatch(converter.fromMessage(message));
+                delivered.incrementAndGet();
+            } catch (RuntimeException e) {
+                // broker thật sẽ requeue/DLQ; ở đây chỉ đếm để báo cáo
+                failed.incrementAndGet();
+                log.warn("[BROKER] Handler lỗi: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void dispatch(Object payload) {
+        if (payload instanceof OrderCreatedMessage msg) {
+            orderConsumer.handleOrderCreated(msg);
+        } else if (payload instanceof OrderStockProcessedMessage msg) {
+            // exchange fan-out sang 2 queue của pipeline
+            pipelineStages.handleEmailStage(msg);
+            pipelineStages.handleLogStage(msg);
+        } else {
+            throw new IllegalStateException("Unexpected payload: " + payload);
+        }
+    }
+}
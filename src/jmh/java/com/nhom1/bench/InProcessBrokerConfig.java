@@ -0,0 +1,26 @@
+package com.nhom1.bench;
+
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.context.annotation.Bean;
+
+// Cố ý không gắn @Configuration: package com.nhom1.bench nằm trong vùng component scan
+// của ứng dụng, cấu hình này chỉ được nạp khi truyền tường minh (LoadGenerator).
+// RabbitTemplate ở đây làm auto-config của Spring Boot lùi lại.
+public class InProcessBrokerConfig {
+
+    @Bean
+    public InProcessBroker inProcessBroker() {
+        return new InProcessBroker();
+    }
+
+    @Bean
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory,
+                                         MessageConverter messageConverter,
+                                         InProcessBroker inProcessBroker) {
+        RabbitTemplate template = new InProcessRabbitTemplate(connectionFactory, inProcessBroker);
+        template.setMessageConverter(messageConverter);
+        return template;
+    }
+}
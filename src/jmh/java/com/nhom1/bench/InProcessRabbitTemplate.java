@@ -0,0 +1,39 @@
+package com.nhom1.bench;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+// RabbitTemplate không mở kết nối: message đã được convert bằng converter thật
+// rồi đưa vào InProcessBroker. Confirm luôn thành công ngay.
+public class InProcessRabbitTemplate extends RabbitTemplate {
+
+    private final InProcessBroker broker;
+
+    public InProcessRabbitTemplate(ConnectionFactory connectionFactory, InProcessBroker broker) {
+        super(connectionFactory);
+        this.broker = broker;
+    }
+
+    @Override
+    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+        broker.publish(message);
+    }
+
+    @Override
+    public <T> T invoke(RabbitOperations.OperationsCallback<T> action, com.rabbitmq.client.ConfirmCallback acks,
+                        com.rabbitmq.client.ConfirmCallback nacks) {
+        return action.doInRabbit(this);
+    }
+
+    @Override
+    public void waitForConfirmsOrDie(long timeout) {
+    }
+
+    @Override
+    public boolean waitForConfirms(long timeout) {
+        return true;
+    }
+}
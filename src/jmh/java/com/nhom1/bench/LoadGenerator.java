@@ -0,0 +1,336 @@
+package com.nhom1.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.nhom1.messaging.OrderConsumer;
+import com.nhom1.messaging.OrderPipelineStages;
+import com.nhom1.service.InventoryService;
+
+// Load test end-to-end chạy offline: POST /orders qua HTTP thật tới Tomcat, relay outbox
+// publish vào InProcessBroker, N thread consumer xử lý, client poll /orders/{id}/status
+// tới khi logWritten = true.
+//
+// Tải dạng open-loop: đơn thứ i được lên lịch ở thời điểm start + i/rate, độ trễ tính từ
+// thời điểm lên lịch (không phải lúc gửi thật) để không bị coordinated omission.
+// Với mỗi (virtual threads, consumer concurrency) tăng dần rate; mức rate cao nhất còn
+// đạt >= 95% throughput, p99 dưới ngưỡng và không có đơn quá hạn là điểm bão hoà.
+// Mặc định chạy cả virtual = false và true. Song song lấy mẫu broker mỗi 10 ms: độ sâu queue lớn nhất
+// và tốc độ xả của consumer (msg/s, chỉ tính các khoảng queue còn tồn, tức năng lực thật của consumer).
+//
+// Tham số (key=value, có thể thêm -- phía trước): rates, concurrency, virtual (danh sách cách nhau dấu phẩy),
+// duration-s, warmup-s, clients, poll-ms, timeout-s, max-p99-ms, products, report.
+// Các tham số app.* / spring.* khác được chuyển thẳng cho ứng dụng.
+public class LoadGenerator {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Map<String, String> options;
+    private final HttpClient http = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    LoadGenerator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String virtual : list("virtual", "false,true")) {
+            for (String concurrency : list("concurrency", "1,4")) {
+                results.addAll(runScenario(Boolean.parseBoolean(virtual), Integer.parseInt(concurrency)));
+            }
+        }
+
+        printTable(results);
+        File report = new File(option("report", "target/load-report.json"));
+        MAPPER.writeValue(report, Map.of("options", options, "results", results));
+        System.out.println("Report: " + report.getAbsolutePath());
+    }
+
+    // Một context ứng dụng cho mỗi cặp (virtual, concurrency), chạy lần lượt các rate
+    private List<Map<String, Object>> runScenario(boolean virtual, int concurrency) throws Exception {
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put("server.port", "0");
+        props.put("spring.threads.virtual.enabled", virtual);
+        props.put("app.outbox.poll-interval-ms", "100");
+        options.forEach((key, value) -> {
+            if (key.startsWith("app.") || key.startsWith("spring.") || key.startsWith("server.")) {
+                props.put(key, value);
+            }
+        });
+
+        ConfigurableApplicationContext context =
+                BenchContext.start(WebApplicationType.SERVLET, props, InProcessBrokerConfig.class);
+        InProcessBroker broker = context.getBean(InProcessBroker.class);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try {
+            int products = Integer.parseInt(option("products", "20"));
+            InventoryService inventoryService = context.getBean(InventoryService.class);
+            for (int i = 0; i < products; i++) {
+                inventoryService.createInventory("P" + i, Integer.MAX_VALUE / 2);
+            }
+            broker.start(context.getBean(MessageConverter.class),
+                    context.getBean(OrderConsumer.class),
+                    context.getBean(OrderPipelineStages.class),
+                    concurrency,
+                    virtual);
+
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            for (String rate : list("rates", "50,100,200,400")) {
+                Map<String, Object> row = new LinkedHashMap<>();
+                row.put("virtualThreads", virtual);
+                row.put("consumerConcurrency", concurrency);
+                row.putAll(runRate(baseUrl, broker, Integer.parseInt(rate), products));
+                row.put("brokerFailures", broker.failed());
+                rows.add(row);
+                System.out.printf("virtual=%s concurrency=%d %s%n", virtual, concurrency, row);
+            }
+        } finally {
+            broker.stop();
+            context.close();
+        }
+        return rows;
+    }
+
+    private Map<String, Object> runRate(String baseUrl, InProcessBroker broker, int rate, int products)
+            throws InterruptedException {
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("warmup-s", "3")));
+        long measureNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("duration-s", "10")));
+        long pollMs = Long.parseLong(option("poll-ms", "10"));
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(option("timeout-s", "30")));
+        Semaphore clients = new Semaphore(Integer.parseInt(option("clients", "256")));
+
+        ConcurrentLinkedQueue<Long> postLatencies = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Long> completionLatencies = new ConcurrentLinkedQueue<>();
+        AtomicLong lastCompletion = new AtomicLong();
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger timeouts = new AtomicInteger();
+        AtomicInteger clientLimited = new AtomicInteger();
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureStart = start + warmupNanos;
+        long end = measureStart + measureNanos;
+        int sent = 0;
+
+        // [0] message xả trong các khoảng queue còn tồn, [1] tổng thời gian các khoảng đó, [2] độ sâu lớn nhất
+        long[] drain = new long[3];
+        AtomicBoolean sampling = new AtomicBoolean(true);
+        Thread sampler = Thread.ofVirtual().start(() -> {
+            long previousNanos = System.nanoTime();
+            long previousDelivered = broker.delivered();
+            int previousDepth = broker.depth();
+            while (sampling.get()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                long now = System.nanoTime();
+                long delivered = broker.delivered();
+                int depth = broker.depth();
+                if (now >= measureStart) {
+                    if (previousDepth > 0) {
+                        drain[0] += delivered - previousDelivered;
+                        drain[1] += now - previousNanos;
+                    }
+                    drain[2] = Math.max(drain[2], depth);
+                }
+                previousNanos = now;
+                previousDelivered = delivered;
+                previousDepth = depth;
+            }
+        });
+
+        try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long intended = start + i * intervalNanos;
+                if (intended >= end) {
+                    break;
+                }
+                LockSupport.parkNanos(intended - System.nanoTime());
+                boolean measured = intended >= measureStart;
+                if (measured) {
+                    sent++;
+                }
+                if (!clients.tryAcquire()) {
+                    // hết client: ghi nhận là lỗi phía tải, không chặn nhịp gửi
+                    if (measured) {
+                        clientLimited.incrementAndGet();
+                    }
+                    continue;
+                }
+                String productId = "P" + (i % products);
+                senders.execute(() -> {
+                    try {
+                        long id = postOrder(baseUrl, productId);
+                        long posted = System.nanoTime();
+                        boolean done = awaitCompletion(baseUrl, id, pollMs, intended + timeoutNanos);
+                        long completed = System.nanoTime();
+                        if (!measured) {
+                            return;
+                        }
+                        postLatencies.add(posted - intended);
+                        if (done) {
+                            completionLatencies.add(completed - intended);
+                            lastCompletion.accumulateAndGet(completed, Math::max);
+                        } else {
+                            timeouts.incrementAndGet();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        if (measured) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        clients.release();
+                    }
+                });
+            }
+        } finally {
+            sampling.set(false);
+            sampler.join();
+        }
+
+        int completed = completionLatencies.size();
+        // throughput bền vững: số đơn hoàn tất chia cho thời gian từ đầu cửa sổ đo tới đơn cuối cùng
+        double elapsedSeconds = Math.max(measureNanos, lastCompletion.get() - measureStart) / 1e9;
+        double throughput = completed / elapsedSeconds;
+        long[] completion = sorted(completionLatencies);
+        double p99 = percentileMs(completion, 0.99);
+        boolean saturated = throughput < 0.95 * rate
+                || p99 > Double.parseDouble(option("max-p99-ms", "1000"))
+                || timeouts.get() > 0
+                || clientLimited.get() > 0;
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("offeredRate", rate);
+        row.put("sent", sent);
+        row.put("completed", completed);
+        row.put("throughput", Math.round(throughput * 10) / 10.0);
+        row.put("errors", errors.get());
+        row.put("timeouts", timeouts.get());
+        row.put("clientLimited", clientLimited.get());
+        row.put("postLatencyMs", percentiles(sorted(postLatencies)));
+        row.put("completionLatencyMs", percentiles(completion));
+        // queue không bao giờ tồn: consumer chưa bị thử tải, không có tốc độ xả để báo
+        row.put("consumerDrainRate", drain[1] > 0 ? Math.round(drain[0] / (drain[1] / 1e9) * 10) / 10.0 : null);
+        row.put("maxQueueDepth", drain[2]);
+        row.put("saturated", saturated);
+        return row;
+    }
+
+    private long postOrder(String baseUrl, String productId) throws IOException, InterruptedException {
+        String body = "{\"customerName\":\"Load Test\",\"productId\":\"" + productId + "\",\"quantity\":1}";
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/orders"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("POST /orders returned " + response.statusCode());
+        }
+        return MAPPER.readTree(response.body()).get("orderId").asLong();
+    }
+
+    private boolean awaitCompletion(String baseUrl, long id, long pollMs, long deadline)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/orders/" + id + "/status")).GET().build();
+        while (System.nanoTime() < deadline) {
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            JsonNode status = MAPPER.readTree(response.body());
+            if (status.path("logWritten").asBoolean()) {
+                return true;
+            }
+            Thread.sleep(pollMs);
+        }
+        return false;
+    }
+
+    private static long[] sorted(ConcurrentLinkedQueue<Long> values) {
+        long[] array = values.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static Map<String, Double> percentiles(long[] sortedNanos) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        result.put("p50", percentileMs(sortedNanos, 0.50));
+        result.put("p95", percentileMs(sortedNanos, 0.95));
+        result.put("p99", percentileMs(sortedNanos, 0.99));
+        result.put("p999", percentileMs(sortedNanos, 0.999));
+        result.put("max", percentileMs(sortedNanos, 1.0));
+        return result;
+    }
+
+    private static double percentileMs(long[] sortedNanos, double q) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(q * sortedNanos.length) - 1;
+        long nanos = sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))];
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void printTable(List<Map<String, Object>> results) {
+        System.out.println();
+        System.out.printf("%-7s %-5s %8s %10s %8s %8s %8s %8s %8s %8s %6s %s%n",
+                "virtual", "conc", "offered", "achieved", "post99", "p50", "p95", "p99", "p999",
+                "drain", "maxQ", "");
+        for (Map<String, Object> row : results) {
+            Map<String, Double> post = (Map<String, Double>) row.get("postLatencyMs");
+            Map<String, Double> done = (Map<String, Double>) row.get("completionLatencyMs");
+            Object drainRate = row.get("consumerDrainRate");
+            System.out.printf("%-7s %-5s %8s %10s %8.1f %8.1f %8.1f %8.1f %8.1f %8s %6s %s%n",
+                    row.get("virtualThreads"), row.get("consumerConcurrency"), row.get("offeredRate"),
+                    row.get("throughput"), post.get("p99"), done.get("p50"), done.get("p95"),
+                    done.get("p99"), done.get("p999"), drainRate != null ? drainRate : "-",
+                    row.get("maxQueueDepth"),
+                    Boolean.TRUE.equals(row.get("saturated")) ? "SATURATED" : "");
+        }
+        System.out.println("(latency in ms; p50..p999 = scheduled POST -> logWritten=true;"
+                + " drain = consumer msg/s while the queue was backlogged, maxQ = deepest queue)");
+    }
+
+    private List<String> list(String key, String defaultValue) {
+        return Arrays.stream(option(key, defaultValue).split(",")).map(String::trim).toList();
+    }
+
+    private String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+}
@@ -0,0 +1,74 @@
+package com.nhom1.bench;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.nhom1.messaging.OrderCreatedMessage;
+import com.nhom1.messaging.OrderStockProcessedMessage;
+
+// Encode/decode message bằng đúng bean MessageConverter của RabbitMQConfig
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MessageConversionBenchmark {
+
+    @Param({"json", "binary"})
+    public String wireFormat;
+
+    private ConfigurableApplicationContext context;
+    private MessageConverter converter;
+    private OrderCreatedMessage created;
+    private OrderStockProcessedMessage stockProcessed;
+    private Message createdWire;
+    private Message stockProcessedWire;
+
+    @Setup
+    public void setUp() {
+        context = BenchContext.start(Map.of("app.rabbitmq.wire-format", wireFormat));
+        converter = context.getBean(MessageConverter.class);
+        created = new OrderCreatedMessage(123456L, "Nguyen Van A", "P001", 2, LocalDateTime.now());
+        stockProcessed = new OrderStockProcessedMessage(123456L, "Nguyen Van A", true);
+        createdWire = converter.toMessage(created, new MessageProperties());
+        stockProcessedWire = converter.toMessage(stockProcessed, new MessageProperties());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Message encodeOrderCreated() {
+        return converter.toMessage(created, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object decodeOrderCreated() {
+        return converter.fromMessage(createdWire);
+    }
+
+    @Benchmark
+    public Message encodeStockProcessed() {
+        return converter.toMessage(stockProcessed, new MessageProperties());
+    }
+
+    @Benchmark
+    public Object decodeStockProcessed() {
+        return converter.fromMessage(stockProcessedWire);
+    }
+}
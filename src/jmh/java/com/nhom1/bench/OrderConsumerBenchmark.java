@@ -0,0 +1,109 @@
+package com.nhom1.bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.nhom1.messaging.OrderConsumer;
+import com.nhom1.messaging.OrderCreatedMessage;
+import com.nhom1.messaging.ProcessedOrderIndex;
+import com.nhom1.service.InventoryService;
+
+// Gọi thẳng handler của consumer với H2 in-memory, không qua broker.
+// Các đơn được chèn sẵn; trước mỗi iteration cờ trạng thái được reset để
+// các câu UPDATE có điều kiện luôn khớp dòng như khi chạy thật, và chỉ mục
+// đơn đã xử lý được xoá. handleDuplicate đo đường bỏ qua message giao lại.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderConsumerBenchmark {
+
+    private static final int ORDERS = 100_000;
+    private static final int PRODUCTS = 100;
+    private static final int BATCH = 100;
+
+    private ConfigurableApplicationContext context;
+    private OrderConsumer consumer;
+    private ProcessedOrderIndex processedIndex;
+    private JdbcTemplate jdbc;
+    private OrderCreatedMessage[] messages;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        context = BenchContext.start(Map.of());
+        consumer = context.getBean(OrderConsumer.class);
+        processedIndex = context.getBean(ProcessedOrderIndex.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        InventoryService inventoryService = context.getBean(InventoryService.class);
+        for (int i = 0; i < PRODUCTS; i++) {
+            inventoryService.createInventory("P" + i, Integer.MAX_VALUE / 2);
+        }
+
+        BenchContext.seedOrders(context, ORDERS);
+        LocalDateTime now = LocalDateTime.now();
+        messages = new OrderCreatedMessage[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            long id = i + 1L;
+            messages[i] = new OrderCreatedMessage(id, "Customer " + id, "P" + (id % PRODUCTS), 1, now);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetOrders() {
+        jdbc.update("update orders set status = 0");
+        jdbc.update("delete from order_event");
+        processedIndex.clear();
+        next = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void handleOrderCreated() {
+        consumer.handleOrderCreated(nextMessage());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void handleOrderCreatedBatch() {
+        List<OrderCreatedMessage> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(nextMessage());
+        }
+        consumer.handleOrderCreatedBatch(batch);
+    }
+
+    // Đơn đầu tiên đã xử lý ở lần gọi trước, các lần sau bị chỉ mục bỏ qua
+    @Benchmark
+    public void handleDuplicate() {
+        consumer.handleOrderCreated(messages[0]);
+    }
+
+    // Đi hết danh sách thì reset lại, nếu không các vòng sau chỉ đo đường bỏ qua message trùng.
+    // Chi phí reset được chia đều cho ORDERS message.
+    private OrderCreatedMessage nextMessage() {
+        if (next == messages.length) {
+            resetOrders();
+        }
+        return messages[next++];
+    }
+}
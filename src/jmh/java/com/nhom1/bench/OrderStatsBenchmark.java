@@ -0,0 +1,60 @@
+package com.nhom1.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.nhom1.repository.OrderRepository;
+import com.nhom1.service.OrderService;
+import com.nhom1.service.OrderStatsTracker;
+
+// getOrderStats (đọc bộ đếm trong RAM) so với câu aggregate dùng khi khởi động
+// (chi phí cũ của mỗi lần gọi /orders/stats) ở các kích thước bảng orders khác nhau
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderStatsBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int orders;
+
+    private ConfigurableApplicationContext context;
+    private OrderService orderService;
+    private OrderRepository orderRepository;
+
+    @Setup
+    public void setUp() {
+        context = BenchContext.start(Map.of());
+        BenchContext.seedOrders(context, orders);
+        // dữ liệu được chèn bằng JDBC nên dựng lại bộ đếm như lúc khởi động
+        context.getBean(OrderStatsTracker.class).rebuild();
+        orderService = context.getBean(OrderService.class);
+        orderRepository = context.getBean(OrderRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, Long> getOrderStats() {
+        return orderService.getOrderStats();
+    }
+
+    @Benchmark
+    public List<OrderRepository.StatusCount> countByStatus() {
+        return orderRepository.countByStatus();
+    }
+}
@@ -0,0 +1,46 @@
+package com.nhom1.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.nhom1.entity.Order;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+
+// File H2 (profile durable) tạo trước khi có cột status còn 4 cột boolean email_sent,
+// stock_updated, log_written, cancelled. ddl-auto=update chỉ thêm cột status (mặc định 0),
+// nên lần khởi động đầu gói 4 cột cũ vào status rồi xoá chúng. DB mới thì không làm gì.
+// Chạy sau khi Hibernate cập nhật schema và trước khi OrderStatsTracker dựng lại thống kê.
+@Component
+public class OrderStatusMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderStatusMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // EntityManagerFactory chỉ để bean này khởi tạo sau bước cập nhật schema
+    public OrderStatusMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        Integer legacy = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.columns "
+                        + "where table_name = 'ORDERS' and column_name = 'EMAIL_SENT'", Integer.class);
+        if (legacy == null || legacy == 0) {
+            return;
+        }
+        int updated = jdbcTemplate.update("update orders set status = "
+                + "case when email_sent then " + Order.EMAIL_SENT + " else 0 end"
+                + " + case when stock_updated then " + Order.STOCK_UPDATED + " else 0 end"
+                + " + case when log_written then " + Order.LOG_WRITTEN + " else 0 end"
+                + " + case when cancelled then " + Order.CANCELLED + " else 0 end");
+        jdbcTemplate.execute("drop index if exists idx_orders_cancelled");
+        jdbcTemplate.execute("alter table orders drop column email_sent, stock_updated, log_written, cancelled");
+        log.info("[MIGRATION] Gói 4 cột cờ cũ của {} đơn vào cột status", updated);
+    }
+}
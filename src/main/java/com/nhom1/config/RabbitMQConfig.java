@@ -1,16 +1,32 @@
 package com.nhom1.config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.HeadersExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.DirectRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.nhom1.messaging.CompactOrderMessageConverter;
+import com.nhom1.messaging.OrderPartitioner;
+import com.nhom1.messaging.OrderRetryHandler;
+import com.nhom1.messaging.RetryTopology;
+
 @Configuration
 public class RabbitMQConfig {
 
@@ -23,6 +39,30 @@ public class RabbitMQConfig {
     @Value("${app.rabbitmq.routing-key}")
     private String routingKey;
 
+    // json | binary: định dạng khi gửi; khi nhận luôn chấp nhận cả hai
+    @Value("${app.rabbitmq.wire-format:json}")
+    private String wireFormat;
+
+    // Pipeline: queue riêng cho stage email và stage log
+    @Value("${app.pipeline.routing-key}")
+    private String pipelineRoutingKey;
+
+    @Value("${app.pipeline.email.queue}")
+    private String emailQueueName;
+
+    @Value("${app.pipeline.log.queue}")
+    private String logQueueName;
+
+    // Chế độ consumer xử lý theo lô
+    @Value("${app.consumer.batch.size:100}")
+    private int batchSize;
+
+    @Value("${app.consumer.batch.receive-timeout-ms:200}")
+    private long batchReceiveTimeoutMs;
+
+    @Value("${app.consumer.prefetch:250}")
+    private int prefetch;
+
     @Bean
     public DirectExchange orderExchange() {
         return new DirectExchange(exchangeName);
@@ -41,8 +81,125 @@ public class RabbitMQConfig {
                 .with(routingKey);
     }
 
+    // Sau stage kho, message được copy vào cả 2 queue email và log (cùng routing key)
+    @Bean
+    public Queue orderEmailQueue() {
+        return QueueBuilder.durable(emailQueueName).build();
+    }
+
+    @Bean
+    public Queue orderLogQueue() {
+        return QueueBuilder.durable(logQueueName).build();
+    }
+
+    @Bean
+    public Binding orderEmailBinding() {
+        return BindingBuilder
+                .bind(orderEmailQueue())
+                .to(orderExchange())
+                .with(pipelineRoutingKey);
+    }
+
+    @Bean
+    public Binding orderLogBinding() {
+        return BindingBuilder
+                .bind(orderLogQueue())
+                .to(orderExchange())
+                .with(pipelineRoutingKey);
+    }
+
+    // Partition queue: order.created.queue.{i} gắn với routing key order.created.{i}.
+    // x-single-active-consumer: dù nhiều node cùng subscribe, mỗi queue chỉ 1 consumer nhận.
+    @Bean
+    public Declarables orderPartitionQueues(OrderPartitioner partitioner) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (int i = 0; i < partitioner.getPartitions(); i++) {
+            Queue queue = QueueBuilder.durable(partitioner.partitionQueue(i))
+                    .singleActiveConsumer()
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder
+                    .bind(queue)
+                    .to(orderExchange())
+                    .with(partitioner.partitionRoutingKey(i)));
+        }
+        return new Declarables(declarables);
+    }
+
+    // Thử lại có backoff: mỗi mức delay 1 queue không có consumer, hết TTL thì dead-letter
+    // về default exchange với routing key gốc (= tên queue đích). Parking queue giữ các
+    // message đã hết lượt thử hoặc không giải mã được.
+    @Bean
+    public Declarables orderRetryQueues(RetryTopology topology) {
+        HeadersExchange retryExchange = new HeadersExchange(topology.getExchange());
+        List<Declarable> declarables = new ArrayList<>();
+        declarables.add(retryExchange);
+        for (long delay : topology.getDelaysMs()) {
+            Queue queue = QueueBuilder.durable(topology.delayQueue(delay))
+                    .ttl((int) delay)
+                    .deadLetterExchange("")
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder
+                    .bind(queue)
+                    .to(retryExchange)
+                    .where(RetryTopology.DELAY_HEADER)
+                    .matches(String.valueOf(delay)));
+        }
+        declarables.add(QueueBuilder.durable(topology.getParkingQueue()).build());
+        return new Declarables(declarables);
+    }
+
+    // Container mặc định của @RabbitListener (thay bản Spring Boot tự tạo) để gắn retry handler
+    @Bean
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            OrderRetryHandler retryHandler) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAdviceChain(retryHandler);
+        return factory;
+    }
+
+    // Container cho partition queue: mỗi queue đúng 1 consumer (channel) riêng,
+    // các partition chạy song song, trong 1 partition xử lý tuần tự.
+    @Bean
+    public DirectRabbitListenerContainerFactory partitionListenerContainerFactory(
+            DirectRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            OrderRetryHandler retryHandler) {
+        DirectRabbitListenerContainerFactory factory = new DirectRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConsumersPerQueue(1);
+        factory.setPrefetchCount(prefetch);
+        factory.setAdviceChain(retryHandler);
+        return factory;
+    }
+
     @Bean
     public MessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
+        return new CompactOrderMessageConverter(
+                new Jackson2JsonMessageConverter(),
+                "binary".equalsIgnoreCase(wireFormat));
+    }
+
+    // Container cho listener nhận cả lô message: gom tối đa batchSize message
+    // hoặc đợi tối đa receiveTimeout rồi giao cho listener một List.
+    // Prefetch luôn >= batchSize để broker đẩy đủ message cho một lô.
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            OrderRetryHandler retryHandler) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(batchReceiveTimeoutMs);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setAdviceChain(retryHandler);
+        return factory;
     }
 }
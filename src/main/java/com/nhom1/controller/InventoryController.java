@@ -15,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.nhom1.entity.Inventory;
+import com.nhom1.service.BackorderService;
 import com.nhom1.service.InventoryService;
 
 @RestController
@@ -22,9 +23,12 @@ import com.nhom1.service.InventoryService;
 public class InventoryController {
 
     private final InventoryService inventoryService;
+    private final BackorderService backorderService;
 
-    public InventoryController(InventoryService inventoryService) {
+    public InventoryController(InventoryService inventoryService,
+                               BackorderService backorderService) {
         this.inventoryService = inventoryService;
+        this.backorderService = backorderService;
     }
 
     // ===== API  =====
@@ -36,17 +40,23 @@ public class InventoryController {
             @RequestParam int quantity
     ) {
         inventoryService.increaseStock(productId, quantity);
-        Inventory inv = inventoryService.getOrCreateInventory(productId);
+        // đọc tồn kho thật (không qua cache): khi bật reservation, DB chỉ được flush theo chu kỳ
         return ResponseEntity.ok(Map.of(
-                "productId", inv.getProductId(),
-                "quantity", inv.getQuantity()
+                "productId", productId,
+                "quantity", inventoryService.availableStock(productId)
         ));
     }
 
-    // xem 1 productId
+    // đơn đang chờ hàng theo product: số đơn và tổng số lượng (đọc từ RAM)
+    @GetMapping("/backorders")
+    public Map<String, Map<String, Long>> getBackorders() {
+        return backorderService.snapshot();
+    }
+
+    // xem 1 productId (đọc qua cache, product chưa có trả về quantity = 0)
     @GetMapping("/{productId}")
     public Inventory get(@PathVariable String productId) {
-        return inventoryService.getOrCreateInventory(productId);
+        return inventoryService.getInventory(productId);
     }
 
     // ===== API CHO inventory.html =====
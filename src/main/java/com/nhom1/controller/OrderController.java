@@ -1,34 +1,77 @@
 package com.nhom1.controller;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.nhom1.dto.BulkOrderResult;
+import com.nhom1.dto.OrderPage;
 import com.nhom1.entity.Order;
+import com.nhom1.service.AdmissionRejectedException;
+import com.nhom1.service.BulkOrderService;
+import com.nhom1.service.OrderAdmission;
+import com.nhom1.service.OrderExportService;
 import com.nhom1.service.OrderService;
+import com.nhom1.service.OrderUpdateStream;
 
 @RestController
 @RequestMapping("/orders")
 public class OrderController {
 
     private final OrderService orderService;
+    private final OrderExportService orderExportService;
+    private final BulkOrderService bulkOrderService;
+    private final OrderUpdateStream updateStream;
+    private final OrderAdmission admission;
+    private final ObjectReader orderReader;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService,
+                           OrderExportService orderExportService,
+                           BulkOrderService bulkOrderService,
+                           OrderUpdateStream updateStream,
+                           OrderAdmission admission,
+                           ObjectMapper objectMapper) {
         this.orderService = orderService;
+        this.orderExportService = orderExportService;
+        this.bulkOrderService = bulkOrderService;
+        this.updateStream = updateStream;
+        this.admission = admission;
+        this.orderReader = objectMapper.readerFor(Order.class);
     }
 
     // =============== TẠO / LẤY ĐƠN ===============
 
     @PostMapping
     public ResponseEntity<Map<String, Object>> createOrder(@RequestBody Order orderRequest) {
-        Order saved = orderService.createOrder(orderRequest);
+        Order saved;
+        try (OrderAdmission.Permit permit = admission.acquire(OrderAdmission.CREATE)) {
+            saved = orderService.createOrder(orderRequest);
+        }
         return ResponseEntity.ok(
                 Map.of(
                         "message", "Đơn hàng của bạn đã được ghi nhận. Vui lòng kiểm tra email xác nhận.",
@@ -37,11 +80,118 @@ public class OrderController {
         );
     }
 
+    // =============== NHẬP ĐƠN SỐ LƯỢNG LỚN ===============
+
+    // Mảng JSON các đơn, đọc dần từ request body sau khi được admission cho phép
+    // (request bị từ chối không tốn công parse); phần tử sai kiểu chỉ làm hỏng đơn đó
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkOrderResult createOrdersBulk(InputStream body) throws IOException {
+        try (OrderAdmission.Permit permit = admission.acquire(OrderAdmission.BULK)) {
+            return bulkOrderService.importOrders(readOrderArray(body), permit.getMaxOrders());
+        }
+    }
+
+    // NDJSON: mỗi dòng 1 đơn, đọc dần từ request body; dòng lỗi chỉ làm hỏng đơn đó
+    @PostMapping(value = "/bulk", consumes = "application/x-ndjson")
+    public BulkOrderResult createOrdersBulkNdjson(InputStream body) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        Iterator<Order> orders = reader.lines()
+                .filter(line -> !line.isBlank())
+                .map(this::parseOrderLine)
+                .iterator();
+        try (OrderAdmission.Permit permit = admission.acquire(OrderAdmission.BULK)) {
+            return bulkOrderService.importOrders(orders, permit.getMaxOrders());
+        }
+    }
+
+    // Bị OrderAdmission từ chối: trả lỗi ngay kèm Retry-After thay vì để request xếp hàng
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<Map<String, Object>> rejected(AdmissionRejectedException e) {
+        return ResponseEntity.status(e.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Map.of(
+                        "message", e.getMessage(),
+                        "reason", e.getReason(),
+                        "retryAfterSeconds", e.getRetryAfterSeconds()
+                ));
+    }
+
+    // Đọc lần lượt từng phần tử của mảng: sai kiểu dữ liệu thì trả null (Jackson tự bỏ qua phần tử đó),
+    // sai cú pháp JSON thì trả null 1 lần rồi dừng vì không đọc tiếp được
+    private Iterator<Order> readOrderArray(InputStream body) {
+        MappingIterator<Order> values;
+        try {
+            values = orderReader.readValues(body);
+        } catch (IOException e) {
+            return Collections.singletonList((Order) null).iterator();
+        }
+        return new Iterator<>() {
+            private boolean broken;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (done) {
+                    return false;
+                }
+                try {
+                    return broken || values.hasNext();
+                } catch (RuntimeException e) {
+                    broken = true;
+                    return true;
+                }
+            }
+
+            @Override
+            public Order next() {
+                if (broken) {
+                    done = true;
+                    return null;
+                }
+                try {
+                    return values.next();
+                } catch (RuntimeJsonMappingException e) {
+                    return null;
+                } catch (RuntimeException e) {
+                    done = true;
+                    return null;
+                }
+            }
+        };
+    }
+
+    private Order parseOrderLine(String line) {
+        try {
+            return orderReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
     @GetMapping
     public List<Order> getAllOrders() {
         return orderService.getAllOrders();
     }
 
+    // Phân trang keyset: truyền nextCursor của trang trước vào cursor để lấy trang tiếp
+    @GetMapping("/page")
+    public OrderPage getOrderPage(@RequestParam(required = false) Long cursor,
+                                  @RequestParam(defaultValue = "50") int limit,
+                                  @RequestParam(required = false) Boolean cancelled,
+                                  @RequestParam(required = false) Boolean processed,
+                                  @RequestParam(required = false) String productId) {
+        return orderService.getOrderPage(cursor, limit, cancelled, processed, productId);
+    }
+
+    // Export toàn bộ đơn dạng NDJSON (mỗi dòng 1 đơn), stream trực tiếp từ DB
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportOrders() {
+        StreamingResponseBody body = orderExportService::exportNdjson;
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
     @GetMapping("/{id}")
     public Order getOrder(@PathVariable Long id) {
         return orderService.getOrder(id);
@@ -61,6 +211,12 @@ public class OrderController {
         );
     }
 
+    // Các lần chuyển trạng thái theo thứ tự: [{"at", "set", "cleared", "status"}]
+    @GetMapping("/{id}/history")
+    public List<Map<String, Object>> getOrderHistory(@PathVariable Long id) {
+        return orderService.getOrderHistory(id);
+    }
+
     // =============== THỐNG KÊ ===============
 
     @GetMapping("/stats")
@@ -68,8 +224,26 @@ public class OrderController {
         return orderService.getOrderStats();
     }
 
+    // =============== CẬP NHẬT REALTIME (SSE) ===============
+
+    // Event "orders": {"orders": [thay đổi theo từng đơn], "stats": {...} nếu thống kê đổi}
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamOrderUpdates() {
+        return updateStream.subscribe();
+    }
+
     // =============== HUỶ ĐƠN + KHÔI PHỤC KHO ===============
 
+    // Huỷ hàng loạt: body là danh sách id. Kho trả lại được gom theo product.
+    @PostMapping("/cancel")
+    public Map<String, Object> cancelOrders(@RequestBody List<Long> ids) {
+        int cancelled = orderService.cancelOrders(ids);
+        return Map.of(
+                "requested", ids.size(),
+                "cancelled", cancelled
+        );
+    }
+
     @PostMapping("/{id}/cancel")
     public ResponseEntity<Map<String, Object>> cancelOrder(@PathVariable Long id) {
         Order cancelled = orderService.cancelOrder(id);
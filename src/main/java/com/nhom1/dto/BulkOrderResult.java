@@ -0,0 +1,58 @@
+package com.nhom1.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Kết quả POST /orders/bulk: mỗi phần tử đầu vào có 1 item theo đúng thứ tự (index từ 0).
+public class BulkOrderResult {
+
+    private int accepted;
+    private int rejected;
+    private final List<Item> items = new ArrayList<>();
+
+    public void accept(int index, Long orderId) {
+        items.add(new Item(index, orderId, null));
+        accepted++;
+    }
+
+    public void reject(int index, String error) {
+        items.add(new Item(index, null, error));
+        rejected++;
+    }
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public static class Item {
+        private final int index;
+        private final Long orderId;
+        private final String error;
+
+        public Item(int index, Long orderId, String error) {
+            this.index = index;
+            this.orderId = orderId;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Long getOrderId() {
+            return orderId;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.nhom1.dto;
+
+import java.util.List;
+
+// Một trang kết quả của GET /orders/page. nextCursor = null khi đã hết dữ liệu.
+public class OrderPage {
+
+    private final List<OrderSummary> items;
+    private final Long nextCursor;
+
+    public OrderPage(List<OrderSummary> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<OrderSummary> getItems() {
+        return items;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+}
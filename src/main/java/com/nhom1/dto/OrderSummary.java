@@ -0,0 +1,75 @@
+package com.nhom1.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import com.nhom1.entity.Order;
+
+// Bản chỉ-đọc của Order cho danh sách / export: đọc bằng projection,
+// không phải managed entity nên Hibernate không phải theo dõi dirty-check.
+public class OrderSummary {
+
+    private final Long id;
+    private final String customerName;
+    private final String productId;
+    private final int quantity;
+    private final BigDecimal totalPrice;
+    private final LocalDateTime createdAt;
+    private final int status;
+
+    public OrderSummary(Long id, String customerName, String productId, int quantity,
+                        BigDecimal totalPrice, LocalDateTime createdAt,
+                        int status) {
+        this.id = id;
+        this.customerName = customerName;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.totalPrice = totalPrice;
+        this.createdAt = createdAt;
+        this.status = status;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public BigDecimal getTotalPrice() {
+        return totalPrice;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isEmailSent() {
+        return (status & Order.EMAIL_SENT) != 0;
+    }
+
+    public boolean isStockUpdated() {
+        return (status & Order.STOCK_UPDATED) != 0;
+    }
+
+    public boolean isLogWritten() {
+        return (status & Order.LOG_WRITTEN) != 0;
+    }
+
+    public boolean isCancelled() {
+        return (status & Order.CANCELLED) != 0;
+    }
+}
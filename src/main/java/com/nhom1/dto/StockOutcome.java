@@ -0,0 +1,47 @@
+package com.nhom1.dto;
+
+import java.util.List;
+
+import com.nhom1.entity.Order;
+
+// Kết quả xử lý kho của một lô đơn (OrderService.processStock).
+// stockWaiting: đơn thiếu hàng nhưng còn lượt chờ, vẫn ở trạng thái chờ xử lý.
+// stockDone (pipeline): đơn đã trừ kho ở lần giao trước nhưng chưa ghi log, cần gửi lại sự kiện stage.
+// skippedIds: đơn không còn chờ xử lý theo DB (đã xử lý, đã huỷ hoặc không tồn tại).
+public class StockOutcome {
+
+    private final List<Order> stockOk;
+    private final List<Order> stockFailed;
+    private final List<Order> stockWaiting;
+    private final List<Order> stockDone;
+    private final List<Long> skippedIds;
+
+    public StockOutcome(List<Order> stockOk, List<Order> stockFailed, List<Order> stockWaiting,
+                        List<Order> stockDone, List<Long> skippedIds) {
+        this.stockOk = stockOk;
+        this.stockFailed = stockFailed;
+        this.stockWaiting = stockWaiting;
+        this.stockDone = stockDone;
+        this.skippedIds = skippedIds;
+    }
+
+    public List<Order> getStockOk() {
+        return stockOk;
+    }
+
+    public List<Order> getStockFailed() {
+        return stockFailed;
+    }
+
+    public List<Order> getStockWaiting() {
+        return stockWaiting;
+    }
+
+    public List<Order> getStockDone() {
+        return stockDone;
+    }
+
+    public List<Long> getSkippedIds() {
+        return skippedIds;
+    }
+}
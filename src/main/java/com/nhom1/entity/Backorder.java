@@ -0,0 +1,93 @@
+package com.nhom1.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+// Đơn đang chờ hàng: được ghi cùng transaction với kết quả trừ kho thất bại,
+// xoá đi khi đơn được phân bổ hàng hoặc bị huỷ. Thứ tự chờ là thứ tự id.
+@Entity
+@Table(name = "order_backorder", indexes = {
+        @Index(name = "idx_backorder_order_id", columnList = "orderId", unique = true)
+})
+public class Backorder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_backorder_seq")
+    @SequenceGenerator(name = "order_backorder_seq", sequenceName = "order_backorder_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long orderId;
+
+    @Column(nullable = false)
+    private String productId;
+
+    private int quantity;
+
+    private LocalDateTime createdAt;
+
+    public Backorder() {
+    }
+
+    public Backorder(Order order) {
+        this.orderId = order.getId();
+        this.productId = order.getProductId();
+        this.quantity = order.getQuantity();
+    }
+
+    @PrePersist
+    public void prePersist() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
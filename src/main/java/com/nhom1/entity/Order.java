@@ -2,21 +2,61 @@ package com.nhom1.entity;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_product_id", columnList = "productId"),
+        @Index(name = "idx_orders_created_at", columnList = "createdAt"),
+        @Index(name = "idx_orders_status", columnList = "status")
+})
 public class Order {
 
+    // Các bit của cột status
+    public static final int EMAIL_SENT = 1;
+    public static final int STOCK_UPDATED = 1 << 1;
+    public static final int LOG_WRITTEN = 1 << 2;
+    public static final int CANCELLED = 1 << 3;
+
+    // Đơn xử lý xong và trừ kho thành công, chưa huỷ: (status & PROCESSED_MASK) == PROCESSED.
+    // Dùng chung cho thống kê processedOrders và bộ lọc processed của GET /orders/page.
+    public static final int PROCESSED = EMAIL_SENT | STOCK_UPDATED | LOG_WRITTEN;
+    public static final int PROCESSED_MASK = PROCESSED | CANCELLED;
+
+    // Tên cờ (như trong JSON) của các bit bật trong bits
+    public static List<String> flagNames(int bits) {
+        List<String> names = new ArrayList<>(4);
+        if ((bits & EMAIL_SENT) != 0) {
+            names.add("emailSent");
+        }
+        if ((bits & STOCK_UPDATED) != 0) {
+            names.add("stockUpdated");
+        }
+        if ((bits & LOG_WRITTEN) != 0) {
+            names.add("logWritten");
+        }
+        if ((bits & CANCELLED) != 0) {
+            names.add("cancelled");
+        }
+        return names;
+    }
+
+    // Sequence cấp phát theo khối (pooled) để Hibernate gom INSERT theo lô (jdbc.batch_size);
+    // IDENTITY buộc Hibernate insert từng dòng để lấy id.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
 
     private String customerName;
@@ -29,13 +69,10 @@ public class Order {
 
     private LocalDateTime createdAt;
 
-    // trạng thái xử lý nền
-    private boolean emailSent;
-    private boolean stockUpdated;
-    private boolean logWritten;
-
-    @Column(nullable = false)
-    private boolean cancelled = false;
+    // Trạng thái xử lý nền và huỷ gói trong 1 số nguyên (các bit ở trên). Chỉ đổi bằng
+    // UPDATE có điều kiện theo bit (OrderRepositoryCustom.applyStatus), mỗi lần đổi ghi 1 OrderEvent.
+    @Column(nullable = false, columnDefinition = "integer default 0 not null")
+    private int status;
 
     @PrePersist
     public void prePersist() {
@@ -94,35 +131,27 @@ public class Order {
         this.createdAt = createdAt;
     }
 
-    public boolean isEmailSent() {
-        return emailSent;
+    public int getStatus() {
+        return status;
     }
 
-    public void setEmailSent(boolean emailSent) {
-        this.emailSent = emailSent;
+    public void setStatus(int status) {
+        this.status = status;
     }
 
-    public boolean isStockUpdated() {
-        return stockUpdated;
+    public boolean isEmailSent() {
+        return (status & EMAIL_SENT) != 0;
     }
 
-    public void setStockUpdated(boolean stockUpdated) {
-        this.stockUpdated = stockUpdated;
+    public boolean isStockUpdated() {
+        return (status & STOCK_UPDATED) != 0;
     }
 
     public boolean isLogWritten() {
-        return logWritten;
-    }
-
-    public void setLogWritten(boolean logWritten) {
-        this.logWritten = logWritten;
+        return (status & LOG_WRITTEN) != 0;
     }
 
     public boolean isCancelled() {
-        return cancelled;
-    }
-
-    public void setCancelled(boolean cancelled) {
-        this.cancelled = cancelled;
+        return (status & CANCELLED) != 0;
     }
 }
@@ -0,0 +1,61 @@
+package com.nhom1.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+// Nhật ký chuyển trạng thái của đơn, chỉ thêm không sửa: mỗi dòng là các bit status được bật
+// (setBits) và tắt (clearBits) trong 1 lần chuyển. Gộp lần lượt các dòng của 1 đơn từ 0 sẽ ra
+// đúng Order.status.
+// Dòng được chèn bằng JDBC batch (OrderRepositoryImpl) nên id dùng IDENTITY của DB.
+@Entity
+@Table(name = "order_event", indexes = {
+        @Index(name = "idx_order_event_order_id", columnList = "orderId")
+})
+public class OrderEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long orderId;
+
+    private int setBits;
+
+    private int clearBits;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public int getSetBits() {
+        return setBits;
+    }
+
+    public int getClearBits() {
+        return clearBits;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    // Trạng thái sau khi áp dụng event này lên trạng thái trước đó
+    public int applyTo(int status) {
+        return (status & ~clearBits) | setBits;
+    }
+}
@@ -0,0 +1,96 @@
+package com.nhom1.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+// Bản ghi outbox: được ghi cùng transaction với Order, relay nền sẽ đọc
+// và publish sang RabbitMQ rồi xoá đi.
+@Entity
+@Table(name = "order_outbox")
+public class OutboxEvent {
+
+    // Sinh id giống Order để outbox cũng được insert theo lô
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_outbox_seq")
+    @SequenceGenerator(name = "order_outbox_seq", sequenceName = "order_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long orderId;
+
+    // Chụp lại các trường của Order để relay publish không phải đọc bảng orders
+    private String customerName;
+
+    private String productId;
+
+    private int quantity;
+
+    private LocalDateTime createdAt;
+
+    public OutboxEvent() {
+    }
+
+    public OutboxEvent(Order order) {
+        this.orderId = order.getId();
+        this.customerName = order.getCustomerName();
+        this.productId = order.getProductId();
+        this.quantity = order.getQuantity();
+        // giữ thời điểm tạo đơn để đo độ trễ end-to-end ở consumer
+        this.createdAt = order.getCreatedAt();
+    }
+
+    @PrePersist
+    public void prePersist() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public void setCustomerName(String customerName) {
+        this.customerName = customerName;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,149 @@
+package com.nhom1.messaging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+// Converter nhị phân bố cục cố định cho các message của hệ thống đơn hàng.
+//
+// Bố cục: [version:1 byte][type:1 byte][payload]
+//   type 1 = OrderCreatedMessage:
+//            v1: [orderId:8]
+//            v2: [orderId:8][quantity:4][productId][customerName]
+//            v3: [orderId:8][createdAt:8][quantity:4][productId][customerName]
+//            v4: [orderId:8][createdAt:8][attempt:4][quantity:4][productId][customerName]
+//   type 2 = OrderStockProcessedMessage: [orderId:8][stockUpdated:1][customerName]
+// String được ghi dạng [độ dài UTF-8:4][bytes], độ dài -1 nghĩa là null.
+//
+// Giải mã bằng switch theo type, không dùng reflection và không cần header __TypeId__.
+// Message không có content type nhị phân (ví dụ JSON từ producer cũ trong lúc rollout)
+// được chuyển cho converter dự phòng.
+public class CompactOrderMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-order-event";
+
+    static final byte VERSION = 4;
+    static final byte TYPE_ORDER_CREATED = 1;
+    static final byte TYPE_STOCK_PROCESSED = 2;
+
+    private final MessageConverter fallback;
+    private final boolean binaryOutbound;
+
+    // binaryOutbound = false: vẫn gửi bằng fallback nhưng nhận được cả hai định dạng
+    public CompactOrderMessageConverter(MessageConverter fallback, boolean binaryOutbound) {
+        this.fallback = fallback;
+        this.binaryOutbound = binaryOutbound;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (!binaryOutbound) {
+            return fallback.toMessage(object, messageProperties);
+        }
+        byte[] body = encode(object);
+        if (body == null) {
+            return fallback.toMessage(object, messageProperties);
+        }
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        if (!CONTENT_TYPE.equals(message.getMessageProperties().getContentType())) {
+            return fallback.fromMessage(message);
+        }
+        return decode(message.getBody());
+    }
+
+    // Trả về null nếu kiểu object không có bố cục nhị phân
+    static byte[] encode(Object object) {
+        if (object instanceof OrderCreatedMessage msg) {
+            byte[] productId = utf8(msg.getProductId());
+            byte[] name = utf8(msg.getCustomerName());
+            ByteBuffer buf = ByteBuffer.allocate(2 + 8 + 8 + 4 + 4 + sizeOf(productId) + sizeOf(name))
+                    .put(VERSION)
+                    .put(TYPE_ORDER_CREATED)
+                    .putLong(msg.getOrderId())
+                    .putLong(msg.getCreatedAt())
+                    .putInt(msg.getAttempt())
+                    .putInt(msg.getQuantity());
+            putString(buf, productId);
+            putString(buf, name);
+            return buf.array();
+        }
+        if (object instanceof OrderStockProcessedMessage msg) {
+            byte[] name = utf8(msg.getCustomerName());
+            ByteBuffer buf = ByteBuffer.allocate(2 + 8 + 1 + sizeOf(name))
+                    .put(VERSION)
+                    .put(TYPE_STOCK_PROCESSED)
+                    .putLong(msg.getOrderId())
+                    .put((byte) (msg.isStockUpdated() ? 1 : 0));
+            putString(buf, name);
+            return buf.array();
+        }
+        return null;
+    }
+
+    static Object decode(byte[] body) {
+        ByteBuffer buf = ByteBuffer.wrap(body);
+        byte version = buf.get();
+        if (version < 1 || version > VERSION) {
+            throw new MessageConversionException("Unsupported order message version: " + version);
+        }
+        byte type = buf.get();
+        switch (type) {
+            case TYPE_ORDER_CREATED:
+                if (version == 1) {
+                    // message cũ chỉ có orderId: consumer sẽ đọc Order từ DB
+                    return new OrderCreatedMessage(buf.getLong());
+                }
+                long createdId = buf.getLong();
+                long createdAt = version >= 3 ? buf.getLong() : 0;
+                int attempt = version >= 4 ? buf.getInt() : 0;
+                int quantity = buf.getInt();
+                String productId = getString(buf);
+                OrderCreatedMessage created = new OrderCreatedMessage(createdId, getString(buf), productId, quantity);
+                created.setCreatedAt(createdAt);
+                created.setAttempt(attempt);
+                return created;
+            case TYPE_STOCK_PROCESSED:
+                long orderId = buf.getLong();
+                boolean stockUpdated = buf.get() != 0;
+                return new OrderStockProcessedMessage(orderId, getString(buf), stockUpdated);
+            default:
+                throw new MessageConversionException("Unknown order message type: " + type);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int sizeOf(byte[] value) {
+        return 4 + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer buf, byte[] value) {
+        if (value == null) {
+            buf.putInt(-1);
+            return;
+        }
+        buf.putInt(value.length).put(value);
+    }
+
+    private static String getString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buf.array(), buf.position(), length, StandardCharsets.UTF_8);
+        buf.position(buf.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,335 @@
+package com.nhom1.messaging;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nhom1.metrics.OrderMetrics;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Tự chỉnh số consumer và prefetch của listener queue chính (đơn lẻ hoặc batch) theo
+// độ sâu queue, thời gian bước trừ kho và độ bận của pool JDBC, trong khoảng min..max cấu hình.
+//
+// Mỗi chu kỳ quyết định 1 bước:
+// - pool JDBC có thread đang chờ connection, hoặc bận >= pool-high-watermark, hoặc bước kho
+//   chậm quá target-stock-ms: bớt 1 consumer, vì DB là nút cổ chai, thêm consumer chỉ thêm chờ.
+// - queue còn tồn (> backlog-per-consumer mỗi consumer) và DB còn rảnh: nhân đôi số consumer.
+// - queue rỗng scale-down-idle-ticks chu kỳ liên tiếp: bớt 1 consumer.
+// Số consumer không vượt quá maximum-pool-size - pool-reserve, để HTTP, outbox relay và các
+// tác vụ định kỳ luôn còn connection.
+//
+// Prefetch = số message 1 consumer xử lý trong prefetch-window-ms (theo tốc độ đo được),
+// chỉ đổi khi lệch từ 2 lần trở lên. SimpleMessageListenerContainer chỉ áp prefetch khi tạo consumer,
+// nên giá trị mới được đặt trước khi đổi số consumer để consumer mới dùng luôn. Consumer cũ chỉ được
+// tạo lại (đặt lại tên queue, message đã prefetch trả về queue) ở chu kỳ không đổi số consumer và
+// cách lần tạo lại trước ít nhất prefetch-restart-cooldown-ms; chu kỳ đầu không bao giờ tạo lại.
+@Component
+public class ConsumerAutoscaler {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsumerAutoscaler.class);
+
+    // id của 2 @RabbitListener trên queue chính trong OrderConsumer
+    static final String SINGLE_LISTENER_ID = "orderCreated";
+    static final String BATCH_LISTENER_ID = "orderCreatedBatch";
+
+    private final RabbitListenerEndpointRegistry listenerRegistry;
+    private final AmqpAdmin amqpAdmin;
+    private final OrderMetrics metrics;
+    private final HikariDataSource hikari;
+    private final int poolSize;
+
+    @Value("${app.consumer.autoscale.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.rabbitmq.queue}")
+    private String queueName;
+
+    @Value("${app.consumer.autoscale.min-consumers:1}")
+    private int minConsumers;
+
+    @Value("${app.consumer.autoscale.max-consumers:16}")
+    private int maxConsumers;
+
+    @Value("${app.consumer.autoscale.min-prefetch:10}")
+    private int minPrefetch;
+
+    @Value("${app.consumer.autoscale.max-prefetch:500}")
+    private int maxPrefetch;
+
+    @Value("${app.consumer.autoscale.prefetch-window-ms:1000}")
+    private long prefetchWindowMs;
+
+    // 0 = không bao giờ tạo lại consumer chỉ để đổi prefetch
+    @Value("${app.consumer.autoscale.prefetch-restart-cooldown-ms:60000}")
+    private long prefetchRestartCooldownMs;
+
+    // prefetch của container factory, là giá trị các consumer lúc khởi động đang dùng
+    @Value("${app.consumer.prefetch:250}")
+    private int factoryPrefetch;
+
+    @Value("${app.consumer.autoscale.backlog-per-consumer:50}")
+    private long backlogPerConsumer;
+
+    @Value("${app.consumer.autoscale.target-stock-ms:250}")
+    private double targetStockMs;
+
+    @Value("${app.consumer.autoscale.pool-high-watermark:0.8}")
+    private double poolHighWatermark;
+
+    @Value("${app.consumer.autoscale.pool-reserve:4}")
+    private int poolReserve;
+
+    @Value("${app.consumer.autoscale.scale-down-idle-ticks:3}")
+    private int scaleDownIdleTicks;
+
+    // batch listener cần prefetch >= batch size để gom đủ 1 lô
+    @Value("${app.consumer.batch.size:100}")
+    private int batchSize;
+
+    private final AtomicInteger consumers = new AtomicInteger();
+    private final AtomicInteger prefetch = new AtomicInteger();
+    private final AtomicInteger consumerLimit = new AtomicInteger();
+    private final Counter scaleUp;
+    private final Counter scaleDownPool;
+    private final Counter scaleDownLatency;
+    private final Counter scaleDownIdle;
+    private final Counter prefetchChanges;
+
+    // Mẫu của chu kỳ trước để tính delta
+    private long lastTickNanos;
+    private long lastConsumed;
+    private long lastStockCount;
+    private double lastStockTotalMs;
+    private int idleTicks;
+    // Có consumer đang chạy với prefetch khác giá trị hiện tại
+    private boolean prefetchStale;
+    private long lastRestartNanos;
+
+    public ConsumerAutoscaler(RabbitListenerEndpointRegistry listenerRegistry,
+                              AmqpAdmin amqpAdmin,
+                              OrderMetrics metrics,
+                              DataSource dataSource,
+                              MeterRegistry registry) {
+        this.listenerRegistry = listenerRegistry;
+        this.amqpAdmin = amqpAdmin;
+        this.metrics = metrics;
+        this.hikari = unwrapHikari(dataSource);
+        this.poolSize = hikari != null ? hikari.getMaximumPoolSize() : 0;
+
+        this.scaleUp = decisions(registry, "scale-up", "backlog");
+        this.scaleDownPool = decisions(registry, "scale-down", "db-pool");
+        this.scaleDownLatency = decisions(registry, "scale-down", "latency");
+        this.scaleDownIdle = decisions(registry, "scale-down", "idle");
+        this.prefetchChanges = decisions(registry, "prefetch", "throughput");
+        Gauge.builder("orders.autoscale.consumers", consumers, AtomicInteger::get)
+                .description("Số consumer autoscaler đang đặt cho queue chính")
+                .register(registry);
+        Gauge.builder("orders.autoscale.consumers.limit", consumerLimit, AtomicInteger::get)
+                .description("Số consumer tối đa sau khi trừ phần connection dự phòng")
+                .register(registry);
+        Gauge.builder("orders.autoscale.prefetch", prefetch, AtomicInteger::get)
+                .description("Prefetch autoscaler đang đặt cho mỗi consumer")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.consumer.autoscale.interval-ms:2000}")
+    public void tick() {
+        if (!enabled) {
+            return;
+        }
+        SimpleMessageListenerContainer container = activeContainer();
+        if (container == null) {
+            return;
+        }
+        int limit = maxConsumers;
+        if (poolSize > 0) {
+            limit = Math.min(limit, Math.max(1, poolSize - poolReserve));
+        }
+        int lower = Math.max(1, Math.min(minConsumers, limit));
+        consumerLimit.set(limit);
+
+        long now = System.nanoTime();
+        long consumed = (long) metrics.getMessagesConsumed().count();
+        long stockCount = metrics.getStockStep().count();
+        double stockTotalMs = metrics.getStockStep().totalTime(TimeUnit.MILLISECONDS);
+        if (consumers.get() == 0) {
+            // Chu kỳ đầu: chưa có mẫu để so, chỉ áp số consumer. Prefetch giữ giá trị của factory
+            // (kẹp vào min..max), không tạo lại consumer đang chạy.
+            consumers.set(lower);
+            int initial = clampPrefetch(factoryPrefetch);
+            int running = batchMode() ? Math.max(factoryPrefetch, batchSize) : factoryPrefetch;
+            prefetch.set(initial);
+            if (initial != running) {
+                container.setPrefetchCount(initial);
+                prefetchStale = true;
+            }
+            container.setConcurrentConsumers(lower);
+            lastRestartNanos = now;
+            log.info("[AUTOSCALE] Bắt đầu với {} consumer, prefetch {} (tối đa {} consumer)",
+                    lower, prefetch.get(), limit);
+            remember(now, consumed, stockCount, stockTotalMs);
+            return;
+        }
+
+        double seconds = Math.max(1e-3, (now - lastTickNanos) / 1e9);
+        double rate = (consumed - lastConsumed) / seconds;
+        long calls = stockCount - lastStockCount;
+        double stockMs = calls > 0 ? (stockTotalMs - lastStockTotalMs) / calls : 0;
+        remember(now, consumed, stockCount, stockTotalMs);
+
+        long depth = queueDepth();
+        // pool Hikari khởi tạo lười, chưa có connection đầu tiên thì chưa có MXBean
+        HikariPoolMXBean pool = hikari != null ? hikari.getHikariPoolMXBean() : null;
+        int waiting = pool != null ? pool.getThreadsAwaitingConnection() : 0;
+        double busy = pool != null && poolSize > 0 ? (double) pool.getActiveConnections() / poolSize : 0;
+
+        int current = consumers.get();
+        int target = current;
+        String reason = null;
+        if (waiting > 0 || busy >= poolHighWatermark) {
+            target = current - 1;
+            reason = "db-pool";
+        } else if (stockMs > targetStockMs) {
+            target = current - 1;
+            reason = "latency";
+        } else if (depth > backlogPerConsumer * current) {
+            target = current * 2;
+            reason = "backlog";
+        } else if (depth == 0 && ++idleTicks >= scaleDownIdleTicks) {
+            target = current - 1;
+            reason = "idle";
+        }
+        if (depth != 0) {
+            idleTicks = 0;
+        }
+        target = Math.max(lower, Math.min(limit, target));
+
+        // Prefetch theo tốc độ thực của 1 consumer; khi queue rỗng không đổi để khỏi dao động.
+        // Đặt trước khi đổi số consumer để consumer được tạo thêm dùng ngay giá trị mới.
+        if (rate > 0 && depth > 0) {
+            int wanted = clampPrefetch((int) Math.ceil(rate / current * prefetchWindowMs / 1000.0));
+            int applied = prefetch.get();
+            // lệch từ 2 lần, hoặc chạm cận min/max mà tỉ lệ 2 lần không bao giờ tới được
+            boolean atBound = wanted != applied && (wanted == maxPrefetch || wanted == clampPrefetch(0));
+            if (wanted >= applied * 2 || wanted * 2 <= applied || atBound) {
+                prefetch.set(wanted);
+                container.setPrefetchCount(wanted);
+                prefetchStale = true;
+                prefetchChanges.increment();
+                log.info("[AUTOSCALE] prefetch {} -> {} ({} msg/s trên {} consumer)",
+                        applied, wanted, Math.round(rate), current);
+            }
+        }
+
+        if (target != current) {
+            idleTicks = 0;
+            consumers.set(target);
+            container.setConcurrentConsumers(target);
+            decisionCounter(target > current, reason).increment();
+            log.info("[AUTOSCALE] {} -> {} consumer ({}: depth={}, {} msg/s, stock {} ms, pool {}/{} chờ {})",
+                    current, target, reason, depth, Math.round(rate), Math.round(stockMs),
+                    pool != null ? pool.getActiveConnections() : 0, poolSize, waiting);
+        } else if (prefetchStale && prefetchRestartCooldownMs > 0
+                && now - lastRestartNanos >= TimeUnit.MILLISECONDS.toNanos(prefetchRestartCooldownMs)) {
+            // Đặt lại cùng tên queue: container huỷ và tạo lại consumer với prefetch mới
+            container.setQueueNames(container.getQueueNames());
+            prefetchStale = false;
+            lastRestartNanos = now;
+            log.info("[AUTOSCALE] Tạo lại {} consumer để áp prefetch {}", current, prefetch.get());
+        }
+    }
+
+    public int getConsumers() {
+        return consumers.get();
+    }
+
+    public int getPrefetch() {
+        return prefetch.get();
+    }
+
+    // Container của queue chính đang chạy: đơn lẻ hoặc batch (partition mode không autoscale,
+    // mỗi partition queue luôn đúng 1 consumer)
+    private SimpleMessageListenerContainer activeContainer() {
+        for (String id : new String[] {SINGLE_LISTENER_ID, BATCH_LISTENER_ID}) {
+            MessageListenerContainer container = listenerRegistry.getListenerContainer(id);
+            if (container instanceof SimpleMessageListenerContainer simple && simple.isRunning()) {
+                return simple;
+            }
+        }
+        return null;
+    }
+
+    private int clampPrefetch(int value) {
+        int lower = Math.min(minPrefetch, maxPrefetch);
+        int clamped = Math.max(lower, Math.min(maxPrefetch, value));
+        return batchMode() ? Math.max(clamped, batchSize) : clamped;
+    }
+
+    private boolean batchMode() {
+        MessageListenerContainer batch = listenerRegistry.getListenerContainer(BATCH_LISTENER_ID);
+        return batch != null && batch.isRunning();
+    }
+
+    private Counter decisionCounter(boolean up, String reason) {
+        if (up) {
+            return scaleUp;
+        }
+        return switch (reason) {
+            case "db-pool" -> scaleDownPool;
+            case "latency" -> scaleDownLatency;
+            default -> scaleDownIdle;
+        };
+    }
+
+    private long queueDepth() {
+        try {
+            QueueInformation info = amqpAdmin.getQueueInfo(queueName);
+            return info != null ? info.getMessageCount() : 0;
+        } catch (AmqpException e) {
+            log.debug("[AUTOSCALE] Không đọc được độ sâu queue: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private void remember(long now, long consumed, long stockCount, double stockTotalMs) {
+        lastTickNanos = now;
+        lastConsumed = consumed;
+        lastStockCount = stockCount;
+        lastStockTotalMs = stockTotalMs;
+    }
+
+    private static HikariDataSource unwrapHikari(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private static Counter decisions(MeterRegistry registry, String action, String reason) {
+        return Counter.builder("orders.autoscale.decisions")
+                .description("Quyết định của autoscaler consumer")
+                .tag("action", action)
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
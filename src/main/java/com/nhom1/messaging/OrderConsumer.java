@@ -1,49 +1,207 @@
 package com.nhom1.messaging;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import com.nhom1.dto.StockOutcome;
 import com.nhom1.entity.Order;
-import com.nhom1.service.InventoryService;
+import com.nhom1.metrics.OrderMetrics;
 import com.nhom1.service.OrderService;
+import com.nhom1.service.OrdersCancelledEvent;
 
+// Consumer idempotent: message giao lại (consumer chết trước khi ack, outbox publish lại)
+// không trừ kho lần 2. ProcessedOrderIndex bỏ qua ngay đơn đã xử lý hoặc đã huỷ trong tiến
+// trình này; đơn còn lại đi qua OrderService.processStock, nơi DB quyết định đơn nào còn chờ.
+// Đơn thiếu hàng được gửi lại qua queue chờ (backoff) tối đa app.retry.stock.max-attempts lần,
+// hết lượt thì ghi lỗi kho và vào hàng chờ backorder (BackorderService).
+// Pipeline: sự kiện stage được đợi confirm; gửi lỗi thì message gốc được giao lại, và đơn đã
+// trừ kho nhưng chưa ghi log được gửi lại sự kiện stage thay vì bị bỏ qua.
 @Component
 public class OrderConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(OrderConsumer.class);
 
     private final OrderService orderService;
-    private final InventoryService inventoryService;
+    private final OrderProducer orderProducer;
+    private final ProcessedOrderIndex processedIndex;
+    private final OrderMetrics metrics;
+
+    // Bật pipeline: consumer này chỉ làm stage kho, email/log do OrderPipelineStages xử lý
+    @Value("${app.pipeline.enabled:false}")
+    private boolean pipelineEnabled;
+
+    // 0 = không gửi lại, thiếu hàng là vào hàng chờ backorder ngay
+    @Value("${app.retry.stock.max-attempts:0}")
+    private int stockMaxAttempts;
 
     public OrderConsumer(OrderService orderService,
-                         InventoryService inventoryService) {
+                         OrderProducer orderProducer,
+                         ProcessedOrderIndex processedIndex,
+                         OrderMetrics metrics) {
         this.orderService = orderService;
-        this.inventoryService = inventoryService;
+        this.orderProducer = orderProducer;
+        this.processedIndex = processedIndex;
+        this.metrics = metrics;
     }
 
-    @RabbitListener(queues = "${app.rabbitmq.queue}")
+    // Queue chính, hoặc các partition queue (mỗi queue 1 consumer) khi app.partitions.count > 0
+    @RabbitListener(id = ConsumerAutoscaler.SINGLE_LISTENER_ID, queues = "${app.rabbitmq.queue}",
+            autoStartup = "#{!${app.consumer.batch.enabled:false} and ${app.partitions.count:0} == 0}")
+    @RabbitListener(queues = "#{@orderPartitioner.queueNames}",
+            containerFactory = "partitionListenerContainerFactory",
+            autoStartup = "#{${app.partitions.count:0} > 0}")
     public void handleOrderCreated(OrderCreatedMessage message) {
-        Long orderId = message.getOrderId();
-        log.info("Received OrderCreated message for orderId={}", orderId);
+        metrics.handlerStarted(1);
+        try {
+            log.info("Received OrderCreated message for orderId={}", message.getOrderId());
+            process(List.of(message));
+        } finally {
+            metrics.handlerFinished();
+        }
+    }
+
+    // Chế độ batch: trừ kho gom theo productId và cập nhật cờ trạng thái của cả lô
+    // trong 1 transaction. Chỉ các message phiên bản cũ mới cần 1 lần findAllById.
+    @RabbitListener(id = ConsumerAutoscaler.BATCH_LISTENER_ID, queues = "${app.rabbitmq.queue}",
+            containerFactory = "batchListenerContainerFactory",
+            autoStartup = "#{${app.consumer.batch.enabled:false} and ${app.partitions.count:0} == 0}")
+    public void handleOrderCreatedBatch(List<OrderCreatedMessage> messages) {
+        metrics.handlerStarted(messages.size());
+        try {
+            log.info("Received batch of {} OrderCreated messages", messages.size());
+            process(messages);
+        } finally {
+            metrics.handlerFinished();
+        }
+    }
 
-        Order order = orderService.getOrder(orderId);
+    private void process(List<OrderCreatedMessage> messages) {
+        Map<Long, OrderCreatedMessage> messagesById = new HashMap<>();
+        Map<Long, Order> ordersById = new LinkedHashMap<>();
+        List<Long> staleIds = new ArrayList<>();
+        Set<Long> canWaitIds = new HashSet<>();
+        int duplicates = 0;
+        for (OrderCreatedMessage message : messages) {
+            Long orderId = message.getOrderId();
+            if (processedIndex.contains(orderId)) {
+                duplicates++;
+                log.info("Order {} đã xử lý hoặc đã huỷ, bỏ qua message", orderId);
+                continue;
+            }
+            messagesById.putIfAbsent(orderId, message);
+            if (message.getAttempt() < stockMaxAttempts) {
+                canWaitIds.add(orderId);
+            }
+            if (message.isCurrentVersion()) {
+                // Payload đủ trường thì xử lý luôn, chỉ đọc DB với message phiên bản cũ
+                ordersById.putIfAbsent(orderId, message.toOrder());
+            } else {
+                staleIds.add(orderId);
+            }
+        }
+        metrics.recordDuplicates("index", duplicates);
 
-        log.info("[EMAIL] Sending confirmation email to customer {} for order {}",
-                order.getCustomerName(), order.getId());
+        if (!staleIds.isEmpty()) {
+            List<Order> loaded = orderService.getOrders(staleIds);
+            loaded.forEach(o -> ordersById.putIfAbsent(o.getId(), o));
+            Set<Long> found = loaded.stream().map(Order::getId).collect(Collectors.toSet());
+            staleIds.stream()
+                    .filter(id -> !found.contains(id))
+                    .forEach(id -> log.warn("Order not found, bỏ qua message cho orderId={}", id));
+        }
+        Collection<Order> orders = ordersById.values();
+        if (orders.isEmpty()) {
+            return;
+        }
+
+        // Trừ kho và ghi cờ trạng thái trong cùng 1 transaction
+        long stockStart = System.nanoTime();
+        StockOutcome outcome = orderService.processStock(orders, !pipelineEnabled, canWaitIds);
+        List<Order> stockOk = outcome.getStockOk();
+        List<Order> stockFailed = outcome.getStockFailed();
+        List<Order> stockWaiting = outcome.getStockWaiting();
+        metrics.recordStock(stockStart, stockOk.size(), stockFailed.size() + stockWaiting.size());
+        metrics.recordDuplicates("db", outcome.getSkippedIds().size());
+
+        stockOk.forEach(o -> log.info("[STOCK] Đã trừ kho product {} với quantity {}",
+                o.getProductId(), o.getQuantity()));
+        stockFailed.forEach(o -> log.warn("[STOCK] Không thể trừ kho cho product {} vì không đủ hàng (order {})",
+                o.getProductId(), o.getId()));
+        outcome.getSkippedIds().forEach(id ->
+                log.info("Order {} không còn chờ xử lý (đã xử lý hoặc đã huỷ), bỏ qua", id));
+        outcome.getStockDone().forEach(o ->
+                log.info("Order {} đã trừ kho nhưng chưa ghi log, gửi lại sự kiện stage", o.getId()));
 
-        boolean stockOk = inventoryService.decreaseStock(order.getProductId(), order.getQuantity());
-        if (stockOk) {
-            log.info("[STOCK] Đã trừ kho product {} với quantity {}",
-                    order.getProductId(), order.getQuantity());
+        if (!stockWaiting.isEmpty()) {
+            List<OrderCreatedMessage> retries = new ArrayList<>(stockWaiting.size());
+            for (Order order : stockWaiting) {
+                OrderCreatedMessage retry = messagesById.get(order.getId()).nextAttempt(order);
+                log.warn("[STOCK] Chưa đủ hàng cho product {} (order {}), chờ và thử lại lần {}",
+                        order.getProductId(), order.getId(), retry.getAttempt());
+                retries.add(retry);
+            }
+            orderProducer.sendOrderCreatedRetry(retries);
+        }
+
+        if (pipelineEnabled) {
+            List<OrderStockProcessedMessage> next = new ArrayList<>(
+                    stockOk.size() + stockFailed.size() + outcome.getStockDone().size());
+            stockOk.forEach(o -> next.add(
+                    new OrderStockProcessedMessage(o.getId(), o.getCustomerName(), true)));
+            outcome.getStockDone().forEach(o -> next.add(
+                    new OrderStockProcessedMessage(o.getId(), o.getCustomerName(), true)));
+            stockFailed.forEach(o -> next.add(
+                    new OrderStockProcessedMessage(o.getId(), o.getCustomerName(), false)));
+            if (!next.isEmpty()) {
+                orderProducer.sendStockProcessed(next);
+            }
         } else {
-            log.warn("[STOCK] Không thể trừ kho cho product {} vì không đủ hàng",
-                    order.getProductId());
+            // Kết quả đã commit: gửi email và ghi log cho các đơn vừa xử lý
+            long emailStart = System.nanoTime();
+            stockOk.forEach(this::sendEmail);
+            stockFailed.forEach(this::sendEmail);
+            metrics.recordEmail(emailStart);
+
+            long logStart = System.nanoTime();
+            stockOk.forEach(o -> log.info("[LOG] Order processed: {}", o.getId()));
+            stockFailed.forEach(o -> log.info("[LOG] Order processed: {}", o.getId()));
+            metrics.recordLog(logStart);
+            stockOk.forEach(o -> metrics.recordEndToEnd(messagesById.get(o.getId()).getCreatedAt()));
+            stockFailed.forEach(o -> metrics.recordEndToEnd(messagesById.get(o.getId()).getCreatedAt()));
         }
 
-        log.info("[LOG] Order processed: {}", order.getId());
+        // Pipeline: đơn thiếu hàng chưa ghi cờ nào cho tới stage log, nên chưa đưa vào chỉ mục.
+        // Tới đây sự kiện stage đã được broker confirm, giao lại thì bỏ qua được.
+        stockOk.forEach(o -> processedIndex.add(o.getId()));
+        outcome.getStockDone().forEach(o -> processedIndex.add(o.getId()));
+        if (!pipelineEnabled) {
+            stockFailed.forEach(o -> processedIndex.add(o.getId()));
+        }
+        outcome.getSkippedIds().forEach(processedIndex::add);
+    }
+
+    // Đơn huỷ trước khi được xử lý: message tới sau bị bỏ qua ngay, không trừ kho
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onOrdersCancelled(OrdersCancelledEvent event) {
+        event.getOrderIds().forEach(processedIndex::add);
+    }
 
-        orderService.updateOrderStatusProcessing(orderId, true, stockOk, true);
+    private void sendEmail(Order order) {
+        log.info("[EMAIL] Sending confirmation email to customer {} for order {}",
+                order.getCustomerName(), order.getId());
     }
 }
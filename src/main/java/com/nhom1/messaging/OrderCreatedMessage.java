@@ -1,11 +1,35 @@
 package com.nhom1.messaging;
 
 import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.nhom1.entity.Order;
+
+// Sự kiện OrderCreated mang sẵn các trường consumer cần (customerName, productId,
+// quantity) để consumer không phải đọc lại bảng orders.
+// version != CURRENT_VERSION (ví dụ message cũ chỉ có orderId) thì consumer đọc DB.
 public class OrderCreatedMessage implements Serializable {
 
+    public static final int CURRENT_VERSION = 2;
+
+    private int version;
+
     private Long orderId;
 
+    private String customerName;
+
+    private String productId;
+
+    private int quantity;
+
+    // Thời điểm tạo đơn (epoch millis), 0 = không rõ. Dùng cho metric orders.end_to_end.
+    private long createdAt;
+
+    // Số lần đơn đã được gửi lại để chờ hàng (0 = lần đầu)
+    private int attempt;
+
     public OrderCreatedMessage() {
     }
 
@@ -13,6 +37,54 @@ public class OrderCreatedMessage implements Serializable {
         this.orderId = orderId;
     }
 
+    public OrderCreatedMessage(Long orderId, String customerName, String productId, int quantity) {
+        this.version = CURRENT_VERSION;
+        this.orderId = orderId;
+        this.customerName = customerName;
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+
+    public OrderCreatedMessage(Long orderId, String customerName, String productId, int quantity,
+                               LocalDateTime createdAt) {
+        this(orderId, customerName, productId, quantity);
+        this.createdAt = createdAt == null
+                ? 0
+                : createdAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @JsonIgnore
+    public boolean isCurrentVersion() {
+        return version == CURRENT_VERSION;
+    }
+
+    // Bản sao gửi lại sau khi thiếu hàng, attempt tăng thêm 1
+    public OrderCreatedMessage nextAttempt(Order order) {
+        OrderCreatedMessage next = new OrderCreatedMessage(
+                orderId, order.getCustomerName(), order.getProductId(), order.getQuantity());
+        next.setCreatedAt(createdAt);
+        next.setAttempt(attempt + 1);
+        return next;
+    }
+
+    // Dựng lại Order (không phải managed entity) từ payload để xử lý mà không cần đọc DB
+    public Order toOrder() {
+        Order order = new Order();
+        order.setId(orderId);
+        order.setCustomerName(customerName);
+        order.setProductId(productId);
+        order.setQuantity(quantity);
+        return order;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     public Long getOrderId() {
         return orderId;
     }
@@ -20,4 +92,44 @@ public class OrderCreatedMessage implements Serializable {
     public void setOrderId(Long orderId) {
         this.orderId = orderId;
     }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public void setCustomerName(String customerName) {
+        this.customerName = customerName;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public void setAttempt(int attempt) {
+        this.attempt = attempt;
+    }
 }
@@ -0,0 +1,76 @@
+package com.nhom1.messaging;
+
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Chia OrderCreated vào N partition queue theo productId.
+// Mọi đơn của cùng 1 product luôn vào cùng 1 partition, mỗi partition chỉ có 1 consumer
+// active nên cập nhật kho của 1 product được xử lý tuần tự mà không cần khoá DB.
+// Dùng jump consistent hash: khi tăng số partition chỉ khoảng 1/N product bị chuyển partition.
+@Component
+public class OrderPartitioner {
+
+    private final int partitions;
+    private final String queueName;
+    private final String routingKey;
+
+    public OrderPartitioner(@Value("${app.partitions.count:0}") int partitions,
+                            @Value("${app.rabbitmq.queue}") String queueName,
+                            @Value("${app.rabbitmq.routing-key}") String routingKey) {
+        this.partitions = partitions;
+        this.queueName = queueName;
+        this.routingKey = routingKey;
+    }
+
+    public boolean isEnabled() {
+        return partitions > 0;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public int partitionOf(String productId) {
+        long key = (productId == null ? 0 : productId.hashCode()) * 0x9E3779B97F4A7C15L;
+        return jumpConsistentHash(key, partitions);
+    }
+
+    public String routingKeyFor(String productId) {
+        return isEnabled() ? partitionRoutingKey(partitionOf(productId)) : routingKey;
+    }
+
+    // Queue nhận OrderCreated của product (dùng khi gửi thẳng vào queue, ví dụ message thử lại)
+    public String queueFor(String productId) {
+        return isEnabled() ? partitionQueue(partitionOf(productId)) : queueName;
+    }
+
+    public String partitionQueue(int partition) {
+        return queueName + "." + partition;
+    }
+
+    public String partitionRoutingKey(int partition) {
+        return routingKey + "." + partition;
+    }
+
+    // Tên các partition queue cho @RabbitListener; khi tắt partition trả về queue chính
+    public String[] getQueueNames() {
+        if (!isEnabled()) {
+            return new String[] { queueName };
+        }
+        return IntStream.range(0, partitions).mapToObj(this::partitionQueue).toArray(String[]::new);
+    }
+
+    // Lamping & Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm"
+    static int jumpConsistentHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+}
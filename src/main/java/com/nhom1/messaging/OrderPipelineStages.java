@@ -0,0 +1,49 @@
+package com.nhom1.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import com.nhom1.metrics.OrderMetrics;
+import com.nhom1.service.OrderService;
+
+// Chế độ pipeline: email và log là 2 stage độc lập, mỗi stage có queue riêng và
+// listener container riêng (concurrency riêng), chạy sau khi stage kho đã xong.
+// Email chậm không làm chậm việc trừ kho hay ghi log.
+@Component
+public class OrderPipelineStages {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderPipelineStages.class);
+
+    private final OrderService orderService;
+    private final OrderMetrics metrics;
+
+    public OrderPipelineStages(OrderService orderService,
+                               OrderMetrics metrics) {
+        this.orderService = orderService;
+        this.metrics = metrics;
+    }
+
+    @RabbitListener(queues = "${app.pipeline.email.queue}",
+            concurrency = "${app.pipeline.email.concurrency:4}",
+            autoStartup = "${app.pipeline.enabled:false}")
+    public void handleEmailStage(OrderStockProcessedMessage message) {
+        long start = System.nanoTime();
+        log.info("[EMAIL] Sending confirmation email to customer {} for order {}",
+                message.getCustomerName(), message.getOrderId());
+        orderService.updateOrderStatusProcessing(message.getOrderId(), true, false, false);
+        metrics.recordEmail(start);
+    }
+
+    @RabbitListener(queues = "${app.pipeline.log.queue}",
+            concurrency = "${app.pipeline.log.concurrency:2}",
+            autoStartup = "${app.pipeline.enabled:false}")
+    public void handleLogStage(OrderStockProcessedMessage message) {
+        long start = System.nanoTime();
+        log.info("[LOG] Order processed: {} (stockUpdated={})",
+                message.getOrderId(), message.isStockUpdated());
+        orderService.updateOrderStatusProcessing(message.getOrderId(), false, false, true);
+        metrics.recordLog(start);
+    }
+}
@@ -1,31 +1,82 @@
 package com.nhom1.messaging;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.List;
+
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.nhom1.metrics.OrderMetrics;
+
 @Component
 public class OrderProducer {
 
-    private static final Logger log = LoggerFactory.getLogger(OrderProducer.class);
-
     private final RabbitTemplate rabbitTemplate;
+    private final OrderPartitioner partitioner;
+    private final RetryTopology retryTopology;
+    private final OrderMetrics metrics;
 
     @Value("${app.rabbitmq.exchange}")
     private String exchangeName;
 
-    @Value("${app.rabbitmq.routing-key}")
-    private String routingKey;
+    @Value("${app.pipeline.routing-key}")
+    private String pipelineRoutingKey;
+
+    @Value("${app.outbox.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
 
-    public OrderProducer(RabbitTemplate rabbitTemplate) {
+    public OrderProducer(RabbitTemplate rabbitTemplate,
+                         OrderPartitioner partitioner,
+                         RetryTopology retryTopology,
+                         OrderMetrics metrics) {
         this.rabbitTemplate = rabbitTemplate;
+        this.partitioner = partitioner;
+        this.retryTopology = retryTopology;
+        this.metrics = metrics;
+    }
+
+    // Gửi cả lô trên cùng 1 channel (pipelined) rồi đợi broker confirm một lần.
+    // Ném AmqpException nếu có message bị nack hoặc quá thời gian chờ confirm.
+    public void sendOrderCreatedBatch(List<OrderCreatedMessage> messages) {
+        long start = System.nanoTime();
+        rabbitTemplate.invoke(ops -> {
+            for (OrderCreatedMessage msg : messages) {
+                ops.convertAndSend(exchangeName, partitioner.routingKeyFor(msg.getProductId()), msg);
+            }
+            ops.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+        metrics.recordPublishCreated(start);
+    }
+
+    // Đơn thiếu hàng: gửi lại vào queue chờ ứng với msg.getAttempt(), hết TTL message quay về
+    // queue OrderCreated của product. Đợi confirm để consumer chỉ ack bản gốc khi bản sao đã an toàn.
+    public void sendOrderCreatedRetry(List<OrderCreatedMessage> messages) {
+        rabbitTemplate.invoke(ops -> {
+            for (OrderCreatedMessage msg : messages) {
+                String delay = String.valueOf(retryTopology.delayFor(msg.getAttempt()));
+                ops.convertAndSend(retryTopology.getExchange(), partitioner.queueFor(msg.getProductId()), msg, m -> {
+                    m.getMessageProperties().setHeader(RetryTopology.DELAY_HEADER, delay);
+                    return m;
+                });
+            }
+            ops.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+        metrics.recordRetry("stock", messages.size());
     }
 
-    public void sendOrderCreated(Long orderId) {
-        OrderCreatedMessage msg = new OrderCreatedMessage(orderId);
-        log.info("Sending OrderCreated message for orderId={}", orderId);
-        rabbitTemplate.convertAndSend(exchangeName, routingKey, msg);
+    // Pipeline: báo cho stage email và log rằng đơn đã xử lý kho xong. Đợi confirm và ném
+    // AmqpException nếu lỗi, để message OrderCreated gốc không được ack mà giao lại.
+    public void sendStockProcessed(List<OrderStockProcessedMessage> messages) {
+        long start = System.nanoTime();
+        rabbitTemplate.invoke(ops -> {
+            for (OrderStockProcessedMessage msg : messages) {
+                ops.convertAndSend(exchangeName, pipelineRoutingKey, msg);
+            }
+            ops.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+        metrics.recordPublishStockProcessed(start);
     }
 }
@@ -0,0 +1,144 @@
+package com.nhom1.messaging;
+
+import java.util.List;
+import java.util.Map;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.ListenerExecutionFailedException;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.nhom1.metrics.OrderMetrics;
+
+// Advice của mọi listener container: handler ném exception thì message không bị requeue
+// ngay (vòng lặp nóng đốt CPU và băng thông broker) mà được gửi vào queue chờ theo
+// backoff của RetryTopology, rồi ack bản gốc. Quá app.retry.max-attempts lần, hoặc message
+// không giải mã được, thì chuyển sang parking queue kèm lý do để xem xét thủ công.
+//
+// Lô message (batch listener) lỗi thì từng message được thử lại riêng; consumer idempotent
+// nên các đơn trong lô đã xử lý xong sẽ được bỏ qua ở lần sau.
+@Component
+public class OrderRetryHandler implements MethodInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderRetryHandler.class);
+
+    static final String ORIGINAL_QUEUE_HEADER = "x-original-queue";
+    static final String EXCEPTION_HEADER = "x-exception-message";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final RetryTopology topology;
+    private final OrderMetrics metrics;
+    private final int maxAttempts;
+    private final long confirmTimeoutMs;
+
+    public OrderRetryHandler(RabbitTemplate rabbitTemplate,
+                             RetryTopology topology,
+                             OrderMetrics metrics,
+                             @Value("${app.retry.max-attempts:4}") int maxAttempts,
+                             @Value("${app.outbox.confirm-timeout-ms:5000}") long confirmTimeoutMs) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.topology = topology;
+        this.metrics = metrics;
+        this.maxAttempts = maxAttempts;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+    }
+
+    // Bọc ContainerDelegate.invokeListener(Channel, Object data):
+    // data là Message, hoặc List<Message> với batch listener
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        try {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            Object data = invocation.getArguments()[1];
+            if (data instanceof Message message) {
+                handleFailure(message, e);
+            } else if (data instanceof List<?> messages) {
+                for (Object message : messages) {
+                    handleFailure((Message) message, e);
+                }
+            } else {
+                throw e;
+            }
+            // trả về bình thường: container ack message gốc
+            return null;
+        }
+    }
+
+    // Gửi bản sao có confirm; lỗi broker thì ném ra để container requeue bản gốc như cũ
+    private void handleFailure(Message message, Throwable error) {
+        MessageProperties props = message.getMessageProperties();
+        String queue = props.getConsumerQueue();
+        Object previous = props.getHeader(RetryTopology.RETRY_COUNT_HEADER);
+        int attempt = (previous instanceof Number n ? n.intValue() : 0) + 1;
+        Throwable cause = error instanceof ListenerExecutionFailedException && error.getCause() != null
+                ? error.getCause()
+                : error;
+
+        if (queue == null || isConversionFailure(error) || attempt > maxAttempts) {
+            park(message, queue, cause);
+            return;
+        }
+
+        long delay = topology.delayFor(attempt);
+        log.warn("[RETRY] Xử lý message từ {} lỗi ({}), thử lại lần {} sau {} ms",
+                queue, cause.getMessage(), attempt, delay);
+        MessageProperties copy = copyProperties(props);
+        copy.setHeader(RetryTopology.RETRY_COUNT_HEADER, attempt);
+        copy.setHeader(RetryTopology.DELAY_HEADER, String.valueOf(delay));
+        send(topology.getExchange(), queue, new Message(message.getBody(), copy));
+        metrics.recordRetry("error", 1);
+    }
+
+    private void park(Message message, String queue, Throwable cause) {
+        log.error("[RETRY] Chuyển message từ {} sang {}: {}", queue, topology.getParkingQueue(), cause.toString());
+        MessageProperties copy = copyProperties(message.getMessageProperties());
+        copy.setHeader(ORIGINAL_QUEUE_HEADER, queue);
+        copy.setHeader(EXCEPTION_HEADER, String.valueOf(cause));
+        // default exchange: routing key là tên queue
+        send("", topology.getParkingQueue(), new Message(message.getBody(), copy));
+        metrics.recordParked();
+    }
+
+    private void send(String exchange, String routingKey, Message message) {
+        rabbitTemplate.invoke(ops -> {
+            ops.send(exchange, routingKey, message);
+            ops.waitForConfirmsOrDie(confirmTimeoutMs);
+            return null;
+        });
+    }
+
+    // Chỉ giữ nội dung và header ứng dụng, bỏ thông tin giao nhận của lần nhận trước
+    private static MessageProperties copyProperties(MessageProperties source) {
+        MessageProperties copy = new MessageProperties();
+        copy.setContentType(source.getContentType());
+        copy.setContentEncoding(source.getContentEncoding());
+        copy.setContentLength(source.getContentLength());
+        copy.setDeliveryMode(source.getDeliveryMode());
+        copy.setMessageId(source.getMessageId());
+        copy.setTimestamp(source.getTimestamp());
+        for (Map.Entry<String, Object> header : source.getHeaders().entrySet()) {
+            if (!"x-death".equals(header.getKey())) {
+                copy.setHeader(header.getKey(), header.getValue());
+            }
+        }
+        return copy;
+    }
+
+    // Message hỏng (không giải mã được) thì thử lại bao nhiêu lần cũng vậy
+    private static boolean isConversionFailure(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof MessageConversionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,44 @@
+package com.nhom1.messaging;
+
+import java.io.Serializable;
+
+// Stage kho gửi sau khi đã ghi kết quả trừ kho; stage email và log nhận song song.
+public class OrderStockProcessedMessage implements Serializable {
+
+    private Long orderId;
+    private String customerName;
+    private boolean stockUpdated;
+
+    public OrderStockProcessedMessage() {
+    }
+
+    public OrderStockProcessedMessage(Long orderId, String customerName, boolean stockUpdated) {
+        this.orderId = orderId;
+        this.customerName = customerName;
+        this.stockUpdated = stockUpdated;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(Long orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public void setCustomerName(String customerName) {
+        this.customerName = customerName;
+    }
+
+    public boolean isStockUpdated() {
+        return stockUpdated;
+    }
+
+    public void setStockUpdated(boolean stockUpdated) {
+        this.stockUpdated = stockUpdated;
+    }
+}
@@ -0,0 +1,68 @@
+package com.nhom1.messaging;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nhom1.entity.OutboxEvent;
+import com.nhom1.repository.OutboxRepository;
+
+// Relay nền: đọc outbox theo lô, publish có publisher confirm, confirm xong mới xoá.
+// Nếu broker lỗi thì giữ nguyên bản ghi và thử lại ở lần poll sau (at-least-once).
+// Mỗi lần poll publish lô tiếp theo khi lô trước đầy, nhưng dừng sau app.outbox.max-relay-ms
+// để lần chạy không kéo dài vô hạn khi outbox tồn nhiều: phần còn lại chờ lần poll sau.
+// Các tác vụ định kỳ chạy trên pool riêng (spring.task.scheduling.pool.size), nên relay đang chờ
+// confirm của broker không chặn flush kho, flush SSE, gauge hay autoscaler.
+@Component
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxRepository outboxRepository;
+    private final OrderProducer orderProducer;
+
+    @Value("${app.outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${app.outbox.max-relay-ms:250}")
+    private long maxRelayMs;
+
+    public OutboxRelay(OutboxRepository outboxRepository,
+                       OrderProducer orderProducer) {
+        this.outboxRepository = outboxRepository;
+        this.orderProducer = orderProducer;
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:100}")
+    public void relay() {
+        long deadline = System.nanoTime() + maxRelayMs * 1_000_000;
+        List<OutboxEvent> batch;
+        do {
+            batch = outboxRepository.findBatch(PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            List<OrderCreatedMessage> messages = batch.stream()
+                    .map(e -> new OrderCreatedMessage(
+                            e.getOrderId(), e.getCustomerName(), e.getProductId(), e.getQuantity(),
+                            e.getCreatedAt()))
+                    .toList();
+            try {
+                orderProducer.sendOrderCreatedBatch(messages);
+            } catch (AmqpException e) {
+                log.warn("[OUTBOX] Publish lô {} event thất bại, sẽ thử lại: {}", batch.size(), e.getMessage());
+                return;
+            }
+
+            outboxRepository.deleteAllByIdInBatch(batch.stream().map(OutboxEvent::getId).toList());
+            log.info("[OUTBOX] Đã publish {} event OrderCreated", batch.size());
+        } while (batch.size() == batchSize && System.nanoTime() < deadline);
+    }
+}
@@ -0,0 +1,98 @@
+package com.nhom1.messaging;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Chỉ mục các orderId consumer đã xử lý xong hoặc đã bị huỷ, để bỏ qua message giao lại
+// (hoặc message của đơn đã huỷ) mà không chạm DB.
+//
+// Id đơn sinh từ sequence nên gần như liên tục: lưu dạng bitmap chia chunk, mỗi chunk
+// 65536 id = 8 KB. Giữ tối đa maxChunks chunk, chunk lâu không dùng nhất bị bỏ (LRU)
+// khi cần chỗ cho chunk mới. Mặc định 64 chunk = 512 KB, phủ khoảng 4 triệu đơn gần nhất.
+//
+// Chỉ mục chỉ là đường tắt: "có" nghĩa là chắc chắn đã xử lý; "không" (kể cả sau khi
+// khởi động lại hoặc chunk bị bỏ) thì consumer hỏi DB qua OrderService.processStock.
+@Component
+public class ProcessedOrderIndex {
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final int maxChunks;
+    private final ConcurrentHashMap<Long, Chunk> chunks = new ConcurrentHashMap<>();
+
+    public ProcessedOrderIndex(@Value("${app.consumer.dedup.max-chunks:64}") int maxChunks) {
+        this.maxChunks = Math.max(1, maxChunks);
+    }
+
+    public boolean contains(Long orderId) {
+        if (orderId == null || orderId < 0) {
+            return false;
+        }
+        Chunk chunk = chunks.get(orderId >>> CHUNK_SHIFT);
+        if (chunk == null) {
+            return false;
+        }
+        chunk.touch();
+        int bit = (int) (orderId & CHUNK_MASK);
+        return (chunk.words.get(bit >>> 6) & (1L << (bit & 63))) != 0;
+    }
+
+    public void add(Long orderId) {
+        if (orderId == null || orderId < 0) {
+            return;
+        }
+        long key = orderId >>> CHUNK_SHIFT;
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = chunks.computeIfAbsent(key, k -> new Chunk());
+            evictIfFull();
+        }
+        chunk.touch();
+        int bit = (int) (orderId & CHUNK_MASK);
+        int word = bit >>> 6;
+        long mask = 1L << (bit & 63);
+        long current;
+        do {
+            current = chunk.words.get(word);
+        } while ((current & mask) == 0 && !chunk.words.compareAndSet(word, current, current | mask));
+    }
+
+    // Quên toàn bộ: các lần nhận sau sẽ hỏi lại DB
+    public void clear() {
+        chunks.clear();
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    // Chỉ chạy khi vừa thêm chunk mới (mỗi 65536 id), quét tối đa maxChunks + 1 phần tử
+    private void evictIfFull() {
+        while (chunks.size() > maxChunks) {
+            Map.Entry<Long, Chunk> oldest = null;
+            for (Map.Entry<Long, Chunk> entry : chunks.entrySet()) {
+                if (oldest == null || entry.getValue().lastUsed < oldest.getValue().lastUsed) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            chunks.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    private static final class Chunk {
+        final AtomicLongArray words = new AtomicLongArray(1 << (CHUNK_SHIFT - 6));
+        volatile long lastUsed = System.nanoTime();
+
+        void touch() {
+            lastUsed = System.nanoTime();
+        }
+    }
+}
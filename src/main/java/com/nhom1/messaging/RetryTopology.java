@@ -0,0 +1,55 @@
+package com.nhom1.messaging;
+
+import java.util.Arrays;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Tên và tham số của các queue chờ thử lại và parking queue.
+//
+// Message cần thử lại được publish vào exchange headers app.retry.exchange, routing key là
+// tên queue đích, header retry-delay-ms chọn queue chờ order.retry.{delay}ms. Queue chờ
+// không có consumer, có x-message-ttl = delay và dead-letter về default exchange: hết TTL
+// message quay lại đúng queue đích theo routing key ban đầu.
+// Delay nằm trong tên queue nên đổi app.retry.delays-ms chỉ tạo queue mới, không đụng
+// tham số của queue đã khai báo.
+@Component
+public class RetryTopology {
+
+    // Không bắt đầu bằng "x-": exchange headers bỏ qua các header đó khi so khớp
+    public static final String DELAY_HEADER = "retry-delay-ms";
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+
+    private final String exchange;
+    private final long[] delaysMs;
+    private final String parkingQueue;
+
+    public RetryTopology(@Value("${app.retry.exchange:order.retry.exchange}") String exchange,
+                         @Value("${app.retry.delays-ms:1000,5000,30000,120000}") long[] delaysMs,
+                         @Value("${app.retry.parking-queue:order.parking.queue}") String parkingQueue) {
+        this.exchange = exchange;
+        this.delaysMs = delaysMs.length == 0 ? new long[] { 1000 } : Arrays.copyOf(delaysMs, delaysMs.length);
+        this.parkingQueue = parkingQueue;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getParkingQueue() {
+        return parkingQueue;
+    }
+
+    public long[] getDelaysMs() {
+        return Arrays.copyOf(delaysMs, delaysMs.length);
+    }
+
+    public String delayQueue(long delayMs) {
+        return "order.retry." + delayMs + "ms";
+    }
+
+    // Lần thử lại thứ attempt (từ 1): backoff theo danh sách, vượt quá thì giữ mức cuối
+    public long delayFor(int attempt) {
+        return delaysMs[Math.min(Math.max(attempt, 1), delaysMs.length) - 1];
+    }
+}
@@ -0,0 +1,228 @@
+package com.nhom1.metrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nhom1.messaging.OrderPartitioner;
+import com.nhom1.messaging.RetryTopology;
+import com.nhom1.repository.OutboxRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Các meter của luồng xử lý đơn. Meter được tạo sẵn một lần trong constructor,
+// hot path chỉ gọi record()/increment() nên đủ rẻ để bật thường trực.
+// Độ sâu queue và outbox được làm mới định kỳ, không hỏi broker/DB mỗi lần scrape.
+@Component
+public class OrderMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderMetrics.class);
+
+    private final AmqpAdmin amqpAdmin;
+    private final OutboxRepository outboxRepository;
+
+    private final Timer publishCreated;
+    private final Timer publishStockProcessed;
+    private final Timer endToEnd;
+    private final Timer stepEmail;
+    private final Timer stepStock;
+    private final Timer stepLog;
+    private final Counter stockOk;
+    private final Counter stockInsufficient;
+    private final Counter messagesConsumed;
+    private final Counter duplicatesIndex;
+    private final Counter duplicatesDb;
+    private final Counter retriesStock;
+    private final Counter retriesError;
+    private final Counter parked;
+
+    private final AtomicInteger activeHandlers = new AtomicInteger();
+    private final AtomicLong outboxPending = new AtomicLong();
+    private final Map<String, AtomicLong> queueDepths = new LinkedHashMap<>();
+    private final String parkingQueue;
+
+    public OrderMetrics(MeterRegistry registry,
+                        AmqpAdmin amqpAdmin,
+                        OutboxRepository outboxRepository,
+                        OrderPartitioner partitioner,
+                        RetryTopology retryTopology) {
+        this.amqpAdmin = amqpAdmin;
+        this.outboxRepository = outboxRepository;
+        this.parkingQueue = retryTopology.getParkingQueue();
+
+        this.publishCreated = timer("orders.publish", "Thời gian publish 1 lô message (gồm chờ confirm)")
+                .tag("event", "order-created").register(registry);
+        this.publishStockProcessed = timer("orders.publish", "Thời gian publish 1 lô message (gồm chờ confirm)")
+                .tag("event", "stock-processed").register(registry);
+        this.endToEnd = timer("orders.end_to_end", "Từ Order.createdAt tới khi consumer xử lý xong")
+                .register(registry);
+        this.stepEmail = step(registry, "email");
+        this.stepStock = step(registry, "stock");
+        this.stepLog = step(registry, "log");
+
+        this.stockOk = Counter.builder("orders.stock").tag("result", "ok").register(registry);
+        this.stockInsufficient = Counter.builder("orders.stock").tag("result", "insufficient").register(registry);
+        this.messagesConsumed = Counter.builder("orders.consumed").register(registry);
+        this.duplicatesIndex = duplicates(registry, "index");
+        this.duplicatesDb = duplicates(registry, "db");
+        this.retriesStock = retries(registry, "stock");
+        this.retriesError = retries(registry, "error");
+        this.parked = Counter.builder("orders.parked")
+                .description("Message chuyển sang parking queue")
+                .register(registry);
+
+        Gauge.builder("orders.consumer.active", activeHandlers, AtomicInteger::get)
+                .description("Số handler OrderCreated đang chạy")
+                .register(registry);
+        Gauge.builder("orders.outbox.pending", outboxPending, AtomicLong::get)
+                .description("Số event còn chờ trong outbox")
+                .register(registry);
+
+        List<String> queues = new ArrayList<>(List.of(partitioner.getQueueNames()));
+        queues.add(retryTopology.getParkingQueue());
+        for (String queue : queues) {
+            AtomicLong depth = new AtomicLong();
+            queueDepths.put(queue, depth);
+            Gauge.builder("orders.queue.depth", depth, AtomicLong::get)
+                    .tag("queue", queue)
+                    .description("Số message đang chờ trong queue")
+                    .register(registry);
+        }
+    }
+
+    public void recordPublishCreated(long startNanos) {
+        publishCreated.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordPublishStockProcessed(long startNanos) {
+        publishStockProcessed.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // createdAtMillis = 0 khi message không mang thời điểm tạo đơn
+    public void recordEndToEnd(long createdAtMillis) {
+        if (createdAtMillis > 0) {
+            endToEnd.record(Math.max(0, System.currentTimeMillis() - createdAtMillis), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void recordEmail(long startNanos) {
+        stepEmail.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordStock(long startNanos, int ok, int insufficient) {
+        stepStock.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        stockOk.increment(ok);
+        stockInsufficient.increment(insufficient);
+    }
+
+    public void recordLog(long startNanos) {
+        stepLog.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // source = index: bỏ qua nhờ ProcessedOrderIndex; db: DB báo đơn không còn chờ xử lý
+    public void recordDuplicates(String source, int count) {
+        if (count > 0) {
+            ("index".equals(source) ? duplicatesIndex : duplicatesDb).increment(count);
+        }
+    }
+
+    // reason = stock: đơn thiếu hàng gửi lại chờ hàng; error: handler ném exception
+    public void recordRetry(String reason, int count) {
+        if (count > 0) {
+            ("stock".equals(reason) ? retriesStock : retriesError).increment(count);
+        }
+    }
+
+    public void recordParked() {
+        parked.increment();
+    }
+
+    public void handlerStarted(int messages) {
+        activeHandlers.incrementAndGet();
+        messagesConsumed.increment(messages);
+    }
+
+    public void handlerFinished() {
+        activeHandlers.decrementAndGet();
+    }
+
+    // Tổng tích luỹ, ConsumerAutoscaler lấy delta giữa 2 chu kỳ
+    public Counter getMessagesConsumed() {
+        return messagesConsumed;
+    }
+
+    public Timer getStockStep() {
+        return stepStock;
+    }
+
+    // Đơn đã nhận nhưng consumer chưa lấy: còn trong outbox + còn trong các queue đơn
+    // (không tính parking queue). Giá trị của lần làm mới gần nhất.
+    public long getBacklog() {
+        long backlog = outboxPending.get();
+        for (Map.Entry<String, AtomicLong> entry : queueDepths.entrySet()) {
+            if (!entry.getKey().equals(parkingQueue)) {
+                backlog += entry.getValue().get();
+            }
+        }
+        return backlog;
+    }
+
+    @Scheduled(fixedDelayString = "${app.metrics.refresh-interval-ms:5000}")
+    public void refreshBacklog() {
+        outboxPending.set(outboxRepository.count());
+        try {
+            queueDepths.forEach((queue, depth) -> {
+                QueueInformation info = amqpAdmin.getQueueInfo(queue);
+                if (info != null) {
+                    depth.set(info.getMessageCount());
+                }
+            });
+        } catch (AmqpException e) {
+            log.debug("[METRICS] Không đọc được độ sâu queue: {}", e.getMessage());
+        }
+    }
+
+    private static Timer.Builder timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(5));
+    }
+
+    private static Counter duplicates(MeterRegistry registry, String source) {
+        return Counter.builder("orders.duplicates")
+                .description("Message OrderCreated bị bỏ qua vì đơn đã xử lý")
+                .tag("source", source)
+                .register(registry);
+    }
+
+    private static Counter retries(MeterRegistry registry, String reason) {
+        return Counter.builder("orders.retry")
+                .description("Message gửi vào queue chờ thử lại")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    private static Timer step(MeterRegistry registry, String step) {
+        return timer("orders.step", "Thời gian từng bước xử lý đơn")
+                .tag("step", step)
+                .register(registry);
+    }
+}
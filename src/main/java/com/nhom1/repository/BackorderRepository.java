@@ -0,0 +1,26 @@
+package com.nhom1.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.nhom1.entity.Backorder;
+
+public interface BackorderRepository extends JpaRepository<Backorder, Long> {
+
+    // Nạp toàn bộ hàng chờ khi khởi động, theo thứ tự vào hàng
+    @Query("select b from Backorder b order by b.id")
+    List<Backorder> findAllInOrder();
+
+    // Các đơn trong danh sách đang có dòng chờ hàng
+    @Query("select b.orderId from Backorder b where b.orderId in :orderIds")
+    List<Long> findOrderIds(@Param("orderIds") Collection<Long> orderIds);
+
+    @Modifying
+    @Query("delete from Backorder b where b.orderId in :orderIds")
+    int deleteByOrderIds(@Param("orderIds") Collection<Long> orderIds);
+}
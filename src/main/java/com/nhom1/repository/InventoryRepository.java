@@ -3,10 +3,40 @@ package com.nhom1.repository;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.nhom1.entity.Inventory;
 
+import jakarta.persistence.LockModeType;
+
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
 
     Optional<Inventory> findByProductId(String productId);
+
+    // Đọc tồn kho hiện tại, không qua cache
+    @Query("select i.quantity from Inventory i where i.productId = :productId")
+    Optional<Integer> findQuantity(@Param("productId") String productId);
+
+    // Đọc và khoá dòng kho: phân bổ hàng cho đơn chờ dựa trên số lượng đọc được
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i.quantity from Inventory i where i.productId = :productId")
+    Optional<Integer> lockQuantity(@Param("productId") String productId);
+
+    // Trừ kho nguyên tử trong 1 câu UPDATE: chỉ trừ khi còn đủ hàng.
+    // Trả về 1 nếu trừ thành công, 0 nếu không đủ hàng hoặc chưa có product.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update Inventory i set i.quantity = i.quantity - :qty "
+            + "where i.productId = :productId and i.quantity >= :qty")
+    int decreaseIfAvailable(@Param("productId") String productId, @Param("qty") int qty);
+
+    // Cộng (hoặc trừ nếu delta < 0) tồn kho nguyên tử. Trả về 0 nếu chưa có product.
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update Inventory i set i.quantity = i.quantity + :delta where i.productId = :productId")
+    int addQuantity(@Param("productId") String productId, @Param("delta") int delta);
 }
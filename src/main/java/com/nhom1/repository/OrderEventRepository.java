@@ -0,0 +1,16 @@
+package com.nhom1.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.nhom1.entity.OrderEvent;
+
+public interface OrderEventRepository extends JpaRepository<OrderEvent, Long> {
+
+    // Lịch sử chuyển trạng thái của 1 đơn theo thứ tự ghi
+    @Query("select e from OrderEvent e where e.orderId = :orderId order by e.id")
+    List<OrderEvent> findHistory(@Param("orderId") Long orderId);
+}
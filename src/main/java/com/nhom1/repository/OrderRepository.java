@@ -1,8 +1,76 @@
 package com.nhom1.repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.nhom1.dto.OrderSummary;
 import com.nhom1.entity.Order;
 
-public interface OrderRepository extends JpaRepository<Order, Long> {
+import jakarta.persistence.LockModeType;
+
+public interface OrderRepository extends JpaRepository<Order, Long>, OrderRepositoryCustom {
+
+    // Phân trang keyset theo id (giảm dần, id tăng theo createdAt): chỉ đọc các đơn có
+    // id < cursor nên chi phí mỗi trang không phụ thuộc việc đang ở trang thứ mấy.
+    // Lọc theo status: các bit trong statusMask phải bằng statusValue (mask 0 = không lọc),
+    // và các bit trong excludeMask phải khác excludeValue (excludeMask 0 = không loại).
+    // productId null = không lọc.
+    @Query("select new com.nhom1.dto.OrderSummary(o.id, o.customerName, o.productId, o.quantity, "
+            + "o.totalPrice, o.createdAt, o.status) "
+            + "from Order o "
+            + "where (:cursor is null or o.id < :cursor) "
+            + "and bitand(o.status, cast(:statusMask as Integer)) = :statusValue "
+            + "and (cast(:excludeMask as Integer) = 0 "
+            + "or bitand(o.status, cast(:excludeMask as Integer)) <> :excludeValue) "
+            + "and (:productId is null or o.productId = :productId) "
+            + "order by o.id desc")
+    List<OrderSummary> findPage(@Param("cursor") Long cursor,
+                                @Param("statusMask") int statusMask,
+                                @Param("statusValue") int statusValue,
+                                @Param("excludeMask") int excludeMask,
+                                @Param("excludeValue") int excludeValue,
+                                @Param("productId") String productId,
+                                Pageable pageable);
+
+    // Đọc và khoá dòng: các stage song song cập nhật cờ của cùng 1 đơn không ghi đè nhau
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o from Order o where o.id = :id")
+    Optional<Order> findForUpdate(@Param("id") Long id);
+
+    // Khoá các đơn còn chờ trừ kho (chưa huỷ, chưa trừ kho, chưa ghi log) và trả về id của chúng.
+    // Đơn đang bị consumer khác khoá thì chờ; sau khi bên đó commit, đơn không còn khớp điều kiện.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o.id from Order o where o.id in :ids and bitand(o.status, "
+            + "com.nhom1.entity.Order.CANCELLED + com.nhom1.entity.Order.STOCK_UPDATED "
+            + "+ com.nhom1.entity.Order.LOG_WRITTEN) = 0")
+    List<Long> lockPending(@Param("ids") Collection<Long> ids);
+
+    // Pipeline: các đơn đã trừ kho nhưng stage log chưa chạy (và chưa huỷ)
+    @Query("select o.id from Order o where o.id in :ids and bitand(o.status, "
+            + "com.nhom1.entity.Order.CANCELLED + com.nhom1.entity.Order.STOCK_UPDATED "
+            + "+ com.nhom1.entity.Order.LOG_WRITTEN) = com.nhom1.entity.Order.STOCK_UPDATED")
+    List<Long> findAwaitingLog(@Param("ids") Collection<Long> ids);
+
+    // Khoá các đơn đang chờ hàng (chưa huỷ, chưa trừ kho) trước khi phân bổ hàng nhập thêm
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o.id from Order o where o.id in :ids and bitand(o.status, "
+            + "com.nhom1.entity.Order.CANCELLED + com.nhom1.entity.Order.STOCK_UPDATED) = 0")
+    List<Long> lockBackordered(@Param("ids") Collection<Long> ids);
+
+    // Số đơn theo từng giá trị status (tối đa 16 nhóm, đọc trên index status), dùng khi khởi động
+    @Query("select o.status as status, count(o) as count from Order o group by o.status")
+    List<StatusCount> countByStatus();
+
+    interface StatusCount {
+        int getStatus();
+
+        long getCount();
+    }
 }
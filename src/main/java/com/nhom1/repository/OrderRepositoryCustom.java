@@ -0,0 +1,24 @@
+package com.nhom1.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface OrderRepositoryCustom {
+
+    // Một đơn vừa đổi status: giá trị trước và sau câu UPDATE
+    record StatusChange(long orderId, int before, int after) {
+
+        public int setBits() {
+            return after & ~before;
+        }
+
+        public int clearBits() {
+            return before & ~after;
+        }
+    }
+
+    // Chuyển trạng thái có điều kiện cho các đơn ids trong 1 câu UPDATE: chỉ chạm đơn không có
+    // bit nào của forbidden và thật sự đổi giá trị; bật các bit set, tắt các bit clear.
+    // Mỗi đơn đổi được ghi 1 OrderEvent trong cùng transaction. Trả về đúng các đơn đã đổi.
+    List<StatusChange> applyStatus(Collection<Long> ids, int set, int clear, int forbidden);
+}
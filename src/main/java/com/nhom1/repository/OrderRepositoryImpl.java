@@ -0,0 +1,56 @@
+package com.nhom1.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Phần JDBC của OrderRepository (Spring Data ghép theo tên lớp ...Impl).
+//
+// OLD TABLE (UPDATE ...) của H2 trả về các dòng bị UPDATE với giá trị trước khi đổi, trong cùng
+// câu lệnh: biết chính xác đơn nào chuyển trạng thái và từ đâu mà không cần đọc và khoá trước.
+// Hai bên cùng đổi 1 đơn (stage email và stage log, huỷ và consumer) thì bên sau chờ khoá dòng
+// rồi tính lại trên status mới, không ghi đè bit của nhau.
+class OrderRepositoryImpl implements OrderRepositoryCustom {
+
+    private static final String APPLY_SQL =
+            "select id, status from old table ("
+            + "update orders set status = bitor(bitand(status, ?), ?) "
+            + "where id = any(?) and bitand(status, ?) = 0 and bitor(bitand(status, ?), ?) <> status)";
+
+    private static final String EVENT_SQL =
+            "insert into order_event (order_id, set_bits, clear_bits, created_at) values (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    OrderRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<StatusChange> applyStatus(Collection<Long> ids, int set, int clear, int forbidden) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        int keep = ~clear;
+        List<StatusChange> changes = jdbcTemplate.query(APPLY_SQL,
+                (rs, i) -> {
+                    int before = rs.getInt("status");
+                    return new StatusChange(rs.getLong("id"), before, (before & keep) | set);
+                },
+                keep, set, ids.toArray(Long[]::new), forbidden, keep, set);
+
+        if (!changes.isEmpty()) {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.batchUpdate(EVENT_SQL, changes, changes.size(), (ps, change) -> {
+                ps.setLong(1, change.orderId());
+                ps.setInt(2, change.setBits());
+                ps.setInt(3, change.clearBits());
+                ps.setTimestamp(4, now);
+            });
+        }
+        return changes;
+    }
+}
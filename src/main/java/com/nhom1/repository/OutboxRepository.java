@@ -0,0 +1,16 @@
+package com.nhom1.repository;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import com.nhom1.entity.OutboxEvent;
+
+public interface OutboxRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // Lấy một lô event cũ nhất (theo thứ tự ghi)
+    @Query("select e from OutboxEvent e order by e.id")
+    List<OutboxEvent> findBatch(Pageable pageable);
+}
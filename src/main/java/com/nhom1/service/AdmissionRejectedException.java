@@ -0,0 +1,29 @@
+package com.nhom1.service;
+
+// Request tạo đơn bị từ chối bởi OrderAdmission. status là mã HTTP trả về
+// (429 vượt tốc độ, 503 quá tải), retryAfterSeconds đi vào header Retry-After.
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final int status;
+    private final String reason;
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(int status, String reason, long retryAfterSeconds, String message) {
+        super(message);
+        this.status = status;
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
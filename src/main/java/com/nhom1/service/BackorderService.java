@@ -0,0 +1,284 @@
+package com.nhom1.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nhom1.entity.Backorder;
+import com.nhom1.entity.Order;
+import com.nhom1.repository.BackorderRepository;
+import com.nhom1.repository.OrderRepository;
+import com.nhom1.repository.OrderRepositoryCustom.StatusChange;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+// Hàng chờ đơn thiếu hàng theo từng product (FIFO), để nhập thêm hàng là giao ngay
+// cho các đơn đang chờ mà không phải publish lại message hay quét bảng orders.
+//
+// Bảng order_backorder là nguồn sự thật, được ghi cùng transaction với kết quả trừ kho;
+// khi khởi động nạp toàn bộ vào RAM. Khi tồn kho tăng (StockIncreasedEvent, sau commit),
+// mỗi lô đơn đầu hàng được phân bổ trong 1 transaction: khoá các đơn, trừ tổng số lượng
+// 1 lần, ghi cờ stockUpdated bằng 1 câu UPDATE và xoá các dòng chờ.
+//
+// FIFO nghiêm ngặt: đơn đầu hàng chưa đủ hàng thì các đơn sau cũng chờ, và đơn mới của
+// product đang có hàng chờ thì xếp vào cuối thay vì chen lên trước.
+@Service
+public class BackorderService {
+
+    private static final Logger log = LoggerFactory.getLogger(BackorderService.class);
+
+    private final BackorderRepository backorderRepository;
+    private final OrderRepository orderRepository;
+    private final InventoryService inventoryService;
+    private final OrderStatsTracker statsTracker;
+    private final OrderUpdateStream updateStream;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Counter fulfilledCounter;
+
+    private final ConcurrentHashMap<String, ProductQueue> queues = new ConcurrentHashMap<>();
+
+    public BackorderService(BackorderRepository backorderRepository,
+                            OrderRepository orderRepository,
+                            InventoryService inventoryService,
+                            OrderStatsTracker statsTracker,
+                            OrderUpdateStream updateStream,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry registry,
+                            @Value("${app.backorder.batch-size:500}") int batchSize) {
+        this.backorderRepository = backorderRepository;
+        this.orderRepository = orderRepository;
+        this.inventoryService = inventoryService;
+        this.statsTracker = statsTracker;
+        this.updateStream = updateStream;
+        // chạy sau commit của transaction khác nên luôn mở transaction mới
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.batchSize = Math.max(1, batchSize);
+
+        this.fulfilledCounter = Counter.builder("orders.backorder.fulfilled")
+                .description("Đơn chờ hàng đã được phân bổ khi nhập thêm hàng")
+                .register(registry);
+        Gauge.builder("orders.backorder.waiting", this, BackorderService::getWaitingCount)
+                .description("Số đơn đang chờ hàng")
+                .register(registry);
+    }
+
+    @PostConstruct
+    public void load() {
+        List<Backorder> rows = backorderRepository.findAllInOrder();
+        rows.forEach(b -> queue(b.getProductId()).add(b.getOrderId(), b.getQuantity()));
+        log.info("[BACKORDER] Nạp {} đơn chờ hàng của {} product", rows.size(), queues.size());
+    }
+
+    // ===== Ghi nhận / bỏ đơn chờ (trong transaction của caller) =====
+
+    // Đơn trừ kho thất bại: ghi dòng chờ, sau commit mới đưa vào hàng chờ trong RAM.
+    // Sau đó thử phân bổ ngay, phòng khi hàng được nhập đúng lúc đơn còn chưa commit.
+    public void add(Collection<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        List<Backorder> rows = backorderRepository.saveAll(orders.stream().map(Backorder::new).toList());
+        TransactionHooks.afterCommit(() -> {
+            rows.forEach(b -> queue(b.getProductId()).add(b.getOrderId(), b.getQuantity()));
+            rows.stream().map(Backorder::getProductId).distinct().forEach(this::fulfil);
+        });
+    }
+
+    // Các đơn bị huỷ khi đang chờ hàng. Bỏ đơn đầu hàng có thể làm các đơn sau đủ hàng.
+    public void remove(Collection<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        backorderRepository.deleteByOrderIds(orders.stream().map(Order::getId).toList());
+        Map<String, List<Long>> idsByProduct = new LinkedHashMap<>();
+        orders.forEach(o -> idsByProduct.computeIfAbsent(o.getProductId(), k -> new ArrayList<>()).add(o.getId()));
+        TransactionHooks.afterCommit(() -> idsByProduct.forEach((productId, ids) -> {
+            queue(productId).removeAll(ids);
+            fulfil(productId);
+        }));
+    }
+
+    // Đơn đã có dòng chờ (đọc DB: hàng chờ trong RAM chỉ được cập nhật sau commit)
+    public Set<Long> findWaiting(Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(backorderRepository.findOrderIds(orderIds));
+    }
+
+    public boolean hasWaiting(String productId) {
+        ProductQueue queue = queues.get(productId);
+        return queue != null && !queue.isEmpty();
+    }
+
+    public boolean isWaiting(String productId, Long orderId) {
+        ProductQueue queue = queues.get(productId);
+        return queue != null && queue.contains(orderId);
+    }
+
+    // ===== Phân bổ hàng khi nhập thêm =====
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStockIncreased(StockIncreasedEvent event) {
+        fulfil(event.getProductId());
+    }
+
+    // Phân bổ tồn kho hiện có cho các đơn đầu hàng chờ của product, từng lô batchSize đơn.
+    // Mỗi product chỉ 1 thread phân bổ tại một thời điểm. Trả về số đơn được giao hàng.
+    public int fulfil(String productId) {
+        ProductQueue queue = queues.get(productId);
+        if (queue == null || queue.isEmpty()) {
+            return 0;
+        }
+        queue.fulfilLock.lock();
+        int total = 0;
+        try {
+            while (true) {
+                List<Waiter> batch = queue.head(batchSize);
+                // đọc không khoá: chưa đủ cho đơn đầu hàng thì khỏi mở transaction
+                if (batch.isEmpty() || inventoryService.availableStock(productId) < batch.get(0).quantity()) {
+                    break;
+                }
+                Allocation allocation = transactionTemplate.execute(status -> allocate(productId, batch));
+                queue.removeAll(allocation.doneIds());
+                total += allocation.fulfilled();
+                if (allocation.fulfilled() < allocation.alive() || batch.size() < batchSize) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            // hàng đã nhập vẫn giữ nguyên trong kho, lần nhập/huỷ đơn sau sẽ phân bổ lại
+            log.warn("[BACKORDER] Phân bổ hàng cho product {} thất bại: {}", productId, e.getMessage());
+        } finally {
+            queue.fulfilLock.unlock();
+        }
+        if (total > 0) {
+            fulfilledCounter.increment(total);
+            log.info("[BACKORDER] Giao hàng cho {} đơn chờ của product {}", total, productId);
+        }
+        return total;
+    }
+
+    private Allocation allocate(String productId, List<Waiter> batch) {
+        // khoá đơn trước rồi mới khoá dòng kho, cùng thứ tự với huỷ đơn
+        Set<Long> live = new HashSet<>(
+                orderRepository.lockBackordered(batch.stream().map(Waiter::orderId).toList()));
+
+        List<Waiter> alive = new ArrayList<>(live.size());
+        List<Long> doneIds = new ArrayList<>();
+        for (Waiter waiter : batch) {
+            if (live.contains(waiter.orderId())) {
+                alive.add(waiter);
+            } else {
+                // đã huỷ hoặc đã có hàng bằng đường khác: chỉ cần bỏ khỏi hàng chờ
+                doneIds.add(waiter.orderId());
+            }
+        }
+
+        int fulfilled = inventoryService.allocateInOrder(productId,
+                alive.stream().map(Waiter::quantity).toList());
+        List<Long> fulfilledIds = alive.subList(0, fulfilled).stream().map(Waiter::orderId).toList();
+        if (!fulfilledIds.isEmpty()) {
+            // đơn đã xong email + log thì chuyển từ lỗi kho sang đã xử lý;
+            // pipeline còn chờ stage log thì vẫn là đang chờ
+            List<StatusChange> changes = orderRepository.applyStatus(
+                    fulfilledIds, Order.STOCK_UPDATED, 0, Order.CANCELLED | Order.STOCK_UPDATED);
+            statsTracker.apply(changes);
+            updateStream.statusChanged(changes);
+            doneIds.addAll(fulfilledIds);
+        }
+        if (!doneIds.isEmpty()) {
+            backorderRepository.deleteByOrderIds(doneIds);
+        }
+        return new Allocation(doneIds, fulfilled, alive.size());
+    }
+
+    // ===== Thống kê =====
+
+    public int getWaitingCount() {
+        return queues.values().stream().mapToInt(ProductQueue::size).sum();
+    }
+
+    // productId -> số đơn chờ và tổng số lượng chờ
+    public Map<String, Map<String, Long>> snapshot() {
+        Map<String, Map<String, Long>> result = new TreeMap<>();
+        queues.forEach((productId, queue) -> {
+            List<Waiter> waiters = queue.head(Integer.MAX_VALUE);
+            if (!waiters.isEmpty()) {
+                result.put(productId, Map.of(
+                        "orders", (long) waiters.size(),
+                        "quantity", waiters.stream().mapToLong(Waiter::quantity).sum()));
+            }
+        });
+        return result;
+    }
+
+    private ProductQueue queue(String productId) {
+        return queues.computeIfAbsent(productId, k -> new ProductQueue());
+    }
+
+    private record Waiter(Long orderId, int quantity) {
+    }
+
+    private record Allocation(List<Long> doneIds, int fulfilled, int alive) {
+    }
+
+    // Hàng chờ của 1 product theo thứ tự vào hàng, xoá theo orderId O(1)
+    private static final class ProductQueue {
+
+        final ReentrantLock fulfilLock = new ReentrantLock();
+        private final LinkedHashMap<Long, Waiter> waiters = new LinkedHashMap<>();
+
+        synchronized void add(Long orderId, int quantity) {
+            waiters.putIfAbsent(orderId, new Waiter(orderId, quantity));
+        }
+
+        synchronized void removeAll(Collection<Long> orderIds) {
+            orderIds.forEach(waiters::remove);
+        }
+
+        synchronized List<Waiter> head(int limit) {
+            List<Waiter> head = new ArrayList<>(Math.min(limit, waiters.size()));
+            for (Waiter waiter : waiters.values()) {
+                if (head.size() == limit) {
+                    break;
+                }
+                head.add(waiter);
+            }
+            return head;
+        }
+
+        synchronized boolean contains(Long orderId) {
+            return waiters.containsKey(orderId);
+        }
+
+        synchronized boolean isEmpty() {
+            return waiters.isEmpty();
+        }
+
+        synchronized int size() {
+            return waiters.size();
+        }
+    }
+}
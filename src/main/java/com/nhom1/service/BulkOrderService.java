@@ -0,0 +1,100 @@
+package com.nhom1.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.nhom1.dto.BulkOrderResult;
+import com.nhom1.entity.Order;
+
+// Nhập đơn hàng số lượng lớn: kiểm tra từng đơn, lưu theo từng chunk (mỗi chunk 1 transaction,
+// INSERT theo lô JDBC). Event OrderCreated đi qua outbox và được relay publish theo lô có confirm.
+@Service
+public class BulkOrderService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkOrderService.class);
+
+    private final OrderService orderService;
+
+    @Value("${app.orders.bulk.chunk-size:500}")
+    private int chunkSize;
+
+    public BulkOrderService(OrderService orderService) {
+        this.orderService = orderService;
+    }
+
+    // Phần tử null = dữ liệu đầu vào không đọc được (ví dụ dòng NDJSON lỗi).
+    // Nhận tối đa maxOrders đơn (giới hạn của permit admission); còn dữ liệu thì báo lỗi ở
+    // vị trí kế tiếp và dừng đọc, phần còn lại của body không được nhập.
+    public BulkOrderResult importOrders(Iterator<Order> orders, int maxOrders) {
+        BulkOrderResult result = new BulkOrderResult();
+        List<Order> chunk = new ArrayList<>(chunkSize);
+        List<Integer> chunkIndexes = new ArrayList<>(chunkSize);
+
+        int index = 0;
+        while (orders.hasNext()) {
+            if (index >= maxOrders) {
+                result.reject(index, "Vượt giới hạn " + maxOrders + " đơn mỗi request, phần còn lại không được nhập");
+                break;
+            }
+            Order order = orders.next();
+            String error = validate(order);
+            if (error != null) {
+                result.reject(index++, error);
+                continue;
+            }
+            // đơn mới luôn bắt đầu chưa xử lý, bỏ qua id/status client gửi lên
+            order.setId(null);
+            order.setStatus(0);
+            chunk.add(order);
+            chunkIndexes.add(index++);
+            if (chunk.size() == chunkSize) {
+                saveChunk(chunk, chunkIndexes, result);
+            }
+        }
+        saveChunk(chunk, chunkIndexes, result);
+        result.getItems().sort(Comparator.comparingInt(BulkOrderResult.Item::getIndex));
+
+        log.info("[BULK] Nhập {} đơn, lỗi {}", result.getAccepted(), result.getRejected());
+        return result;
+    }
+
+    private void saveChunk(List<Order> chunk, List<Integer> chunkIndexes, BulkOrderResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            List<Order> saved = orderService.createOrders(chunk);
+            for (int i = 0; i < saved.size(); i++) {
+                result.accept(chunkIndexes.get(i), saved.get(i).getId());
+            }
+        } catch (RuntimeException e) {
+            log.warn("[BULK] Lưu chunk {} đơn thất bại: {}", chunk.size(), e.getMessage());
+            chunkIndexes.forEach(i -> result.reject(i, "Không lưu được đơn: " + e.getMessage()));
+        }
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+
+    private static String validate(Order order) {
+        if (order == null) {
+            return "Dữ liệu đơn không hợp lệ";
+        }
+        if (order.getCustomerName() == null || order.getCustomerName().isBlank()) {
+            return "Thiếu customerName";
+        }
+        if (order.getProductId() == null || order.getProductId().isBlank()) {
+            return "Thiếu productId";
+        }
+        if (order.getQuantity() <= 0) {
+            return "quantity phải lớn hơn 0";
+        }
+        return null;
+    }
+}
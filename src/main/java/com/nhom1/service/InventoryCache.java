@@ -0,0 +1,47 @@
+package com.nhom1.service;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nhom1.entity.Inventory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+// Cache đọc tồn kho theo productId, giới hạn số phần tử và TTL.
+// Hit/miss/eviction được đăng ký vào Micrometer dưới tên cache "inventory".
+// Mọi lần ghi kho (kể cả trừ kho ở consumer khi không bật reservation) đều xoá entry,
+// nên cache chỉ có lợi cho SKU đọc nhiều ghi ít; SKU bán chạy gần như luôn miss.
+// Không cập nhật giá trị sau commit vì các commit song song có thể về không theo thứ tự.
+@Component
+public class InventoryCache {
+
+    private final Cache<String, Inventory> cache;
+
+    public InventoryCache(MeterRegistry meterRegistry,
+                          @Value("${app.inventory.cache.max-size:10000}") long maxSize,
+                          @Value("${app.inventory.cache.ttl-ms:2000}") long ttlMs) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "inventory");
+    }
+
+    public Inventory get(String productId, Function<String, Inventory> loader) {
+        return cache.get(productId, loader);
+    }
+
+    // Xoá ngay, và nếu đang trong transaction thì xoá thêm lần nữa sau khi commit
+    // để request đọc chen giữa không nạp lại giá trị cũ vào cache.
+    public void invalidate(String productId) {
+        cache.invalidate(productId);
+        TransactionHooks.afterCommit(() -> cache.invalidate(productId));
+    }
+}
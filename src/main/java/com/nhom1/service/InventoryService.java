@@ -2,8 +2,11 @@ package com.nhom1.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.nhom1.entity.Inventory;
 import com.nhom1.repository.InventoryRepository;
@@ -14,47 +17,163 @@ public class InventoryService {
     private static final Logger log = LoggerFactory.getLogger(InventoryService.class);
 
     private final InventoryRepository inventoryRepository;
-
-    public InventoryService(InventoryRepository inventoryRepository) {
+    private final StockReservationEngine reservationEngine;
+    private final InventoryCache inventoryCache;
+    private final ApplicationEventPublisher events;
+
+    public InventoryService(InventoryRepository inventoryRepository,
+                            StockReservationEngine reservationEngine,
+                            InventoryCache inventoryCache,
+                            ApplicationEventPublisher events) {
         this.inventoryRepository = inventoryRepository;
+        this.reservationEngine = reservationEngine;
+        this.inventoryCache = inventoryCache;
+        this.events = events;
     }
 
-    public Inventory getOrCreateInventory(String productId) {
-        return inventoryRepository.findByProductId(productId)
-                .orElseGet(() -> {
-                    Inventory inv = new Inventory(productId, 0);
-                    Inventory saved = inventoryRepository.save(inv);
-                    log.info("[INVENTORY] Tạo mới inventory cho product {} với quantity = 0", productId);
-                    return saved;
-                });
+    // Đọc tồn kho qua cache, không bao giờ ghi DB:
+    // product chưa có trong kho trả về bản ghi tạm quantity = 0 (không lưu)
+    public Inventory getInventory(String productId) {
+        return inventoryCache.get(productId, id ->
+                inventoryRepository.findByProductId(id).orElseGet(() -> new Inventory(id, 0)));
     }
 
+    // Cộng kho bằng 1 câu UPDATE nguyên tử, chỉ tạo dòng mới khi product chưa có
     @Transactional
     public void increaseStock(String productId, int qty) {
-        Inventory inv = getOrCreateInventory(productId);
-        int before = inv.getQuantity();
-        int after = before + qty;
-        inv.setQuantity(after);
-        inventoryRepository.save(inv);
-        log.info("[INVENTORY] Tăng tồn kho product {}: {} -> {}", productId, before, after);
+        inventoryCache.invalidate(productId);
+        events.publishEvent(new StockIncreasedEvent(productId));
+        if (reservationEngine.isEnabled() && release(productId, qty)) {
+            log.info("[INVENTORY] Tăng tồn kho product {} thêm {} (bộ nhớ)", productId, qty);
+            return;
+        }
+        if (inventoryRepository.addQuantity(productId, qty) == 0) {
+            inventoryRepository.save(new Inventory(productId, qty));
+            log.info("[INVENTORY] Tạo mới inventory cho product {} với quantity = {}", productId, qty);
+            return;
+        }
+        log.info("[INVENTORY] Tăng tồn kho product {} thêm {}", productId, qty);
     }
 
-    @Transactional
+    // Trừ kho bằng 1 câu UPDATE có điều kiện quantity >= qty:
+    // không có read-modify-write nên nhiều consumer song song không bị lost update.
+    // Khi bật StockReservationEngine thì trừ trong bộ nhớ, DB được flush theo lô.
     public boolean decreaseStock(String productId, int qty) {
-        Inventory inv = getOrCreateInventory(productId);
-        int before = inv.getQuantity();
-
-        if (before < qty) {
-            log.warn("[INVENTORY] Không đủ tồn kho cho product {}. Hiện tại: {}, cần: {}",
-                    productId, before, qty);
+        boolean ok = reservationEngine.isEnabled()
+                ? reserve(productId, qty)
+                : inventoryRepository.decreaseIfAvailable(productId, qty) == 1;
+        if (!ok) {
+            log.warn("[INVENTORY] Không đủ tồn kho cho product {}. Cần: {}", productId, qty);
             return false;
         }
 
-        int after = before - qty;
-        inv.setQuantity(after);
-        inventoryRepository.save(inv);
+        if (!reservationEngine.isEnabled()) {
+            inventoryCache.invalidate(productId);
+        }
+        log.info("[INVENTORY] Giảm tồn kho product {} bớt {}", productId, qty);
+        return true;
+    }
+
+    // Trừ kho cho nhiều đơn cùng productId: thử trừ tổng cả lô trong 1 câu UPDATE,
+    // nếu không đủ thì trừ lần lượt từng đơn theo thứ tự.
+    // Trả về kết quả từng đơn theo đúng thứ tự quantities.
+    @Transactional
+    public java.util.List<Boolean> decreaseStockBatch(String productId, java.util.List<Integer> quantities) {
+        if (reservationEngine.isEnabled()) {
+            return quantities.stream()
+                    .map(qty -> reserve(productId, qty))
+                    .toList();
+        }
+
+        inventoryCache.invalidate(productId);
+        int total = quantities.stream().mapToInt(Integer::intValue).sum();
+        if (inventoryRepository.decreaseIfAvailable(productId, total) == 1) {
+            log.info("[INVENTORY] Giảm tồn kho product {} bớt {} (batch {} đơn)",
+                    productId, total, quantities.size());
+            return java.util.Collections.nCopies(quantities.size(), true);
+        }
+        if (quantities.size() == 1) {
+            return java.util.List.of(false);
+        }
+
+        java.util.List<Boolean> results = new java.util.ArrayList<>(quantities.size());
+        for (int qty : quantities) {
+            results.add(inventoryRepository.decreaseIfAvailable(productId, qty) == 1);
+        }
+        log.info("[INVENTORY] Giảm tồn kho product {} từng đơn (batch {} đơn): {}",
+                productId, quantities.size(), results);
+        return results;
+    }
+
+    // Tồn kho hiện tại (không qua cache), để biết có nên thử phân bổ cho đơn chờ hay không
+    public int availableStock(String productId) {
+        return reservationEngine.isEnabled()
+                ? reservationEngine.available(productId)
+                : inventoryRepository.findQuantity(productId).orElse(0);
+    }
 
-        log.info("[INVENTORY] Giảm tồn kho product {}: {} -> {}", productId, before, after);
+    // Phân bổ hàng cho các đơn chờ theo đúng thứ tự (FIFO nghiêm ngặt): dừng ở đơn đầu tiên
+    // không đủ hàng, đơn sau không được chen lên. Trả về số đơn đầu danh sách đã trừ kho.
+    // Với DB: khoá dòng kho, đọc số lượng rồi trừ tổng trong 1 câu UPDATE.
+    @Transactional
+    public int allocateInOrder(String productId, java.util.List<Integer> quantities) {
+        int allocated = 0;
+        if (reservationEngine.isEnabled()) {
+            while (allocated < quantities.size() && reserve(productId, quantities.get(allocated))) {
+                allocated++;
+            }
+            return allocated;
+        }
+
+        int available = inventoryRepository.lockQuantity(productId).orElse(0);
+        int total = 0;
+        while (allocated < quantities.size() && total + quantities.get(allocated) <= available) {
+            total += quantities.get(allocated);
+            allocated++;
+        }
+        if (total > 0) {
+            inventoryRepository.addQuantity(productId, -total);
+            inventoryCache.invalidate(productId);
+            log.info("[INVENTORY] Phân bổ {} cho {} đơn chờ của product {}", total, allocated, productId);
+        }
+        return allocated;
+    }
+
+    // Giữ chỗ trong bộ nhớ. Nếu đang trong transaction (consumer xử lý kho + ghi cờ đơn)
+    // và transaction rollback thì trả lại phần đã giữ, giống như UPDATE kho bị rollback.
+    private boolean reserve(String productId, int qty) {
+        if (!reservationEngine.reserve(productId, qty)) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        reservationEngine.release(productId, qty);
+                    }
+                }
+            });
+        }
+        return true;
+    }
+
+    // Nhập/trả hàng trong bộ nhớ, đối xứng với reserve: transaction rollback (ví dụ huỷ đơn lỗi
+    // sau khi đã trả kho) thì rút lại phần đã cộng, giống như UPDATE kho bị rollback.
+    private boolean release(String productId, int qty) {
+        if (!reservationEngine.release(productId, qty)) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        reservationEngine.retract(productId, qty);
+                    }
+                }
+            });
+        }
         return true;
     }
 
@@ -66,6 +185,9 @@ public class InventoryService {
     // Tạo mới inventory (hoặc cập nhật nếu đã tồn tại productId)
     @org.springframework.transaction.annotation.Transactional
     public Inventory createInventory(String productId, int quantity) {
+        reservationEngine.evict(productId);
+        inventoryCache.invalidate(productId);
+        events.publishEvent(new StockIncreasedEvent(productId));
         return inventoryRepository.findByProductId(productId)
             .map(inv -> {
                 inv.setQuantity(quantity);
@@ -82,6 +204,10 @@ public class InventoryService {
     public Inventory updateInventory(Long id, String productId, int quantity) {
         Inventory inv = inventoryRepository.findById(id)
             .orElseThrow(() -> new RuntimeException("Inventory not found: " + id));
+        reservationEngine.evict(inv.getProductId(), productId);
+        inventoryCache.invalidate(inv.getProductId());
+        inventoryCache.invalidate(productId);
+        events.publishEvent(new StockIncreasedEvent(productId));
         inv.setProductId(productId);
         inv.setQuantity(quantity);
     return inventoryRepository.save(inv);
@@ -90,6 +216,11 @@ public class InventoryService {
     // Xoá inventory theo id
     @org.springframework.transaction.annotation.Transactional
     public void deleteInventory(Long id) {
+        inventoryRepository.findById(id)
+            .ifPresent(inv -> {
+                reservationEngine.evict(inv.getProductId());
+                inventoryCache.invalidate(inv.getProductId());
+            });
         inventoryRepository.deleteById(id);
     }
 }
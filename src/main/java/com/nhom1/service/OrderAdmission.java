@@ -0,0 +1,213 @@
+package com.nhom1.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nhom1.metrics.OrderMetrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Kiểm soát nhận đơn (backpressure) cho POST /orders và POST /orders/bulk.
+//
+// Mỗi request lần lượt qua 3 cửa, bị chặn ở cửa nào thì trả lỗi ngay, không chờ:
+// 1. Tồn đọng: số đơn còn trong outbox + trong các queue đơn (OrderMetrics) vượt max-backlog
+//    → 503, Retry-After = thời gian consumer xả hết phần vượt theo tốc độ đo được.
+// 2. Đồng thời: số request đang chạy của endpoint đạt max-concurrent → 503, Retry-After 1s.
+// 3. Token bucket của endpoint (rate-per-s, burst) hết token → 429, Retry-After = lúc có token.
+// Giá trị <= 0 tắt cửa tương ứng. Endpoint không cấu hình thì không bị giới hạn.
+// Bulk: 1 token cho mỗi request nhưng mỗi permit chỉ nhận tối đa bulk.max-orders đơn, nên tốc độ
+// đơn qua /orders/bulk bị chặn ở rate-per-s * max-orders. Caller xin permit trước khi đọc body.
+@Component
+public class OrderAdmission {
+
+    public static final String CREATE = "create";
+    public static final String BULK = "bulk";
+
+    private final OrderMetrics metrics;
+    private final boolean enabled;
+    private final long maxBacklog;
+    private final long maxRetryAfterSeconds;
+    private final Map<String, Limiter> limiters = new LinkedHashMap<>();
+
+    // Tốc độ consumer lấy message (msg/s), làm mới cùng chu kỳ với độ sâu queue
+    private volatile double drainRate;
+    private long lastConsumed;
+    private long lastSampleNanos;
+
+    public OrderAdmission(OrderMetrics metrics,
+                          MeterRegistry registry,
+                          @Value("${app.admission.enabled:false}") boolean enabled,
+                          @Value("${app.admission.max-backlog:20000}") long maxBacklog,
+                          @Value("${app.admission.max-retry-after-s:30}") long maxRetryAfterSeconds,
+                          @Value("${app.admission.create.rate-per-s:500}") double createRate,
+                          @Value("${app.admission.create.burst:1000}") int createBurst,
+                          @Value("${app.admission.create.max-concurrent:64}") int createConcurrent,
+                          @Value("${app.admission.bulk.rate-per-s:1}") double bulkRate,
+                          @Value("${app.admission.bulk.burst:2}") int bulkBurst,
+                          @Value("${app.admission.bulk.max-concurrent:2}") int bulkConcurrent,
+                          @Value("${app.admission.bulk.max-orders:1000}") int bulkMaxOrders) {
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.maxBacklog = maxBacklog;
+        this.maxRetryAfterSeconds = Math.max(1, maxRetryAfterSeconds);
+        limiters.put(CREATE, new Limiter(CREATE, createRate, createBurst, createConcurrent, 1, registry));
+        limiters.put(BULK, new Limiter(BULK, bulkRate, bulkBurst, bulkConcurrent, bulkMaxOrders, registry));
+
+        Gauge.builder("orders.admission.backlog", metrics, OrderMetrics::getBacklog)
+                .description("Đơn còn trong outbox và queue, so với app.admission.max-backlog")
+                .register(registry);
+        Gauge.builder("orders.admission.drain_rate", this, a -> a.drainRate)
+                .description("Tốc độ consumer lấy message (msg/s) dùng để tính Retry-After")
+                .register(registry);
+    }
+
+    // Xin phép xử lý 1 request; từ chối thì ném AdmissionRejectedException.
+    // Permit phải được đóng khi request xong để trả chỗ đồng thời.
+    public Permit acquire(String endpoint) {
+        Limiter limiter = limiters.get(endpoint);
+        if (!enabled || limiter == null) {
+            return Permit.NONE;
+        }
+
+        long backlog = metrics.getBacklog();
+        if (maxBacklog > 0 && backlog >= maxBacklog) {
+            limiter.rejectedBacklog.increment();
+            throw new AdmissionRejectedException(503, "backlog", backlogRetryAfter(backlog),
+                    "Hệ thống đang tồn " + backlog + " đơn chưa xử lý, vui lòng thử lại sau");
+        }
+        if (limiter.slots != null && !limiter.slots.tryAcquire()) {
+            limiter.rejectedConcurrency.increment();
+            throw new AdmissionRejectedException(503, "concurrency", 1,
+                    "Đang có quá nhiều request " + endpoint + " cùng lúc, vui lòng thử lại sau");
+        }
+        long waitNanos = limiter.takeToken();
+        if (waitNanos > 0) {
+            if (limiter.slots != null) {
+                limiter.slots.release();
+            }
+            limiter.rejectedRate.increment();
+            throw new AdmissionRejectedException(429, "rate", clampRetryAfter(
+                    TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1)),
+                    "Vượt giới hạn " + endpoint + " request/giây, vui lòng thử lại sau");
+        }
+        limiter.accepted.increment();
+        return new Permit(limiter.slots, limiter.maxOrders);
+    }
+
+    @Scheduled(fixedDelayString = "${app.metrics.refresh-interval-ms:5000}")
+    public void sampleDrainRate() {
+        long now = System.nanoTime();
+        long consumed = (long) metrics.getMessagesConsumed().count();
+        if (lastSampleNanos != 0) {
+            double seconds = Math.max(1e-3, (now - lastSampleNanos) / 1e9);
+            drainRate = (consumed - lastConsumed) / seconds;
+        }
+        lastConsumed = consumed;
+        lastSampleNanos = now;
+    }
+
+    // Thời gian xả phần tồn vượt ngưỡng; chưa đo được tốc độ thì trả mức tối đa
+    private long backlogRetryAfter(long backlog) {
+        double rate = drainRate;
+        if (rate <= 0) {
+            return maxRetryAfterSeconds;
+        }
+        return clampRetryAfter((long) Math.ceil((backlog - maxBacklog + 1) / rate));
+    }
+
+    private long clampRetryAfter(long seconds) {
+        return Math.max(1, Math.min(maxRetryAfterSeconds, seconds));
+    }
+
+    // Giữ 1 chỗ đồng thời của endpoint tới khi request xong
+    public static class Permit implements AutoCloseable {
+
+        static final Permit NONE = new Permit(null, 0);
+
+        private final Semaphore slots;
+        private final int maxOrders;
+
+        Permit(Semaphore slots, int maxOrders) {
+            this.slots = slots;
+            this.maxOrders = maxOrders > 0 ? maxOrders : Integer.MAX_VALUE;
+        }
+
+        // Số đơn tối đa request được nhập với permit này
+        public int getMaxOrders() {
+            return maxOrders;
+        }
+
+        @Override
+        public void close() {
+            if (slots != null) {
+                slots.release();
+            }
+        }
+    }
+
+    // Token bucket + giới hạn đồng thời của 1 endpoint
+    private static class Limiter {
+
+        private final double ratePerNano;
+        private final double burst;
+        private final Semaphore slots;
+        private final int maxOrders;
+        private final Counter accepted;
+        private final Counter rejectedRate;
+        private final Counter rejectedConcurrency;
+        private final Counter rejectedBacklog;
+
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+
+        Limiter(String endpoint, double ratePerSecond, int burst, int maxConcurrent, int maxOrders,
+                MeterRegistry registry) {
+            this.ratePerNano = ratePerSecond > 0 ? ratePerSecond / 1e9 : 0;
+            this.burst = Math.max(1, burst);
+            this.tokens = this.burst;
+            this.slots = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+            this.maxOrders = maxOrders;
+            this.accepted = decisions(registry, endpoint, "accepted");
+            this.rejectedRate = decisions(registry, endpoint, "rate");
+            this.rejectedConcurrency = decisions(registry, endpoint, "concurrency");
+            this.rejectedBacklog = decisions(registry, endpoint, "backlog");
+            if (slots != null) {
+                Gauge.builder("orders.admission.in_flight", slots, s -> maxConcurrent - s.availablePermits())
+                        .description("Request đang chạy của endpoint")
+                        .tag("endpoint", endpoint)
+                        .register(registry);
+            }
+        }
+
+        // 0 = lấy được token; > 0 = số nano giây tới khi có token
+        synchronized long takeToken() {
+            if (ratePerNano == 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * ratePerNano);
+            lastRefillNanos = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / ratePerNano);
+        }
+
+        private static Counter decisions(MeterRegistry registry, String endpoint, String result) {
+            return Counter.builder("orders.admission")
+                    .description("Quyết định nhận/từ chối request tạo đơn")
+                    .tag("endpoint", endpoint)
+                    .tag("result", result)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.nhom1.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.nhom1.dto.OrderSummary;
+
+// Export toàn bộ đơn hàng dạng NDJSON: đọc bằng JDBC cursor (fetch size cố định)
+// và ghi từng dòng ra response ngay khi đọc, bộ nhớ không phụ thuộc số đơn.
+@Service
+public class OrderExportService {
+
+    private static final String EXPORT_SQL =
+            "select id, customer_name, product_id, quantity, total_price, created_at, "
+            + "status from orders order by id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectWriter writer;
+
+    public OrderExportService(DataSource dataSource,
+                              ObjectMapper objectMapper,
+                              @Value("${app.orders.export.fetch-size:500}") int fetchSize) {
+        // JdbcTemplate riêng để không đổi fetch size của bean dùng chung
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.writer = objectMapper.writerFor(OrderSummary.class);
+    }
+
+    public void exportNdjson(OutputStream outputStream) throws IOException {
+        BufferedOutputStream out = new BufferedOutputStream(outputStream);
+        try {
+            jdbcTemplate.query(EXPORT_SQL, rs -> {
+                OrderSummary row = new OrderSummary(
+                        rs.getLong("id"),
+                        rs.getString("customer_name"),
+                        rs.getString("product_id"),
+                        rs.getInt("quantity"),
+                        rs.getBigDecimal("total_price"),
+                        rs.getObject("created_at", LocalDateTime.class),
+                        rs.getInt("status"));
+                try {
+                    out.write(writer.writeValueAsBytes(row));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+}
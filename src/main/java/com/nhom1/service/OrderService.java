@@ -1,38 +1,87 @@
 package com.nhom1.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.nhom1.dto.OrderPage;
+import com.nhom1.dto.OrderSummary;
+import com.nhom1.dto.StockOutcome;
 import com.nhom1.entity.Order;
-import com.nhom1.messaging.OrderProducer;
+import com.nhom1.entity.OrderEvent;
+import com.nhom1.entity.OutboxEvent;
+import com.nhom1.repository.OrderEventRepository;
 import com.nhom1.repository.OrderRepository;
+import com.nhom1.repository.OrderRepositoryCustom.StatusChange;
+import com.nhom1.repository.OutboxRepository;
 
 @Service
 public class OrderService {
 
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final OrderRepository orderRepository;
-    private final OrderProducer orderProducer;
+    private final OutboxRepository outboxRepository;
+    private final OrderEventRepository orderEventRepository;
     private final InventoryService inventoryService;   // NEW: dùng để cộng lại kho khi huỷ đơn
+    private final OrderStatsTracker statsTracker;
+    private final OrderUpdateStream updateStream;
+    private final BackorderService backorderService;
+    private final ApplicationEventPublisher events;
 
     public OrderService(OrderRepository orderRepository,
-                        OrderProducer orderProducer,
-                        InventoryService inventoryService) {
+                        OutboxRepository outboxRepository,
+                        OrderEventRepository orderEventRepository,
+                        InventoryService inventoryService,
+                        OrderStatsTracker statsTracker,
+                        OrderUpdateStream updateStream,
+                        BackorderService backorderService,
+                        ApplicationEventPublisher events) {
         this.orderRepository = orderRepository;
-        this.orderProducer = orderProducer;
+        this.outboxRepository = outboxRepository;
+        this.orderEventRepository = orderEventRepository;
         this.inventoryService = inventoryService;
+        this.statsTracker = statsTracker;
+        this.updateStream = updateStream;
+        this.backorderService = backorderService;
+        this.events = events;
     }
 
     // ================== CRUD / BIZ LOGIC ĐƠN HÀNG ==================
 
-    // Tạo đơn: lưu DB + gửi message sang RabbitMQ
+    // Tạo đơn: lưu DB + ghi outbox trong cùng transaction.
+    // OutboxRelay sẽ publish OrderCreated sang RabbitMQ ở nền.
     @Transactional
     public Order createOrder(Order order) {
+        // đơn mới luôn bắt đầu chưa xử lý, bỏ qua id/status client gửi lên
+        order.setId(null);
+        order.setStatus(0);
         Order saved = orderRepository.save(order);
-        // Gửi sự kiện OrderCreated sang RabbitMQ (xử lý nền)
-        orderProducer.sendOrderCreated(saved.getId());
+        outboxRepository.save(new OutboxEvent(saved));
+        statsTracker.orderCreated();
+        updateStream.orderCreated(saved);
+        return saved;
+    }
+
+    // Tạo nhiều đơn trong 1 transaction: INSERT orders và outbox được gom theo lô JDBC
+    @Transactional
+    public List<Order> createOrders(List<Order> orders) {
+        List<Order> saved = orderRepository.saveAll(orders);
+        outboxRepository.saveAll(saved.stream().map(OutboxEvent::new).toList());
+        statsTracker.orderCreated(saved.size());
+        updateStream.ordersCreated(saved);
         return saved;
     }
 
@@ -42,95 +91,232 @@ public class OrderService {
                 .orElseThrow(() -> new RuntimeException("Order not found: " + id));
     }
 
+    // Lấy nhiều đơn trong 1 query (consumer chế độ batch)
+    @Transactional(readOnly = true)
+    public List<Order> getOrders(Collection<Long> ids) {
+        return orderRepository.findAllById(ids);
+    }
+
     // Lấy tất cả đơn hàng dùng cho dashboard / UI
     @Transactional(readOnly = true)
     public List<Order> getAllOrders() {
         return orderRepository.findAll();
     }
 
-    // Worker gọi để cập nhật trạng thái nền của đơn hàng
+    // Lấy 1 trang đơn hàng (mới nhất trước) theo cursor = id của đơn cuối trang trước
+    @Transactional(readOnly = true)
+    public OrderPage getOrderPage(Long cursor, int limit,
+                                  Boolean cancelled, Boolean processed, String productId) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // processed giống processedOrders của /orders/stats: đủ 3 cờ và chưa huỷ
+        if (Boolean.TRUE.equals(processed) && Boolean.TRUE.equals(cancelled)) {
+            return new OrderPage(List.of(), null);
+        }
+        int mask = 0;
+        int value = 0;
+        int excludeMask = 0;
+        if (cancelled != null) {
+            mask |= Order.CANCELLED;
+            value |= cancelled ? Order.CANCELLED : 0;
+        }
+        if (Boolean.TRUE.equals(processed)) {
+            mask |= Order.PROCESSED_MASK;
+            value |= Order.PROCESSED;
+        } else if (Boolean.FALSE.equals(processed)) {
+            excludeMask = Order.PROCESSED_MASK;
+        }
+        List<OrderSummary> items = orderRepository.findPage(
+                cursor, mask, value, excludeMask, Order.PROCESSED, productId, PageRequest.ofSize(size));
+        Long nextCursor = items.size() == size ? items.get(items.size() - 1).getId() : null;
+        return new OrderPage(items, nextCursor);
+    }
+
+    // Lịch sử chuyển trạng thái của đơn (append-only), kèm status sau từng lần chuyển
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getOrderHistory(Long orderId) {
+        if (!orderRepository.existsById(orderId)) {
+            throw new RuntimeException("Order not found: " + orderId);
+        }
+        List<Map<String, Object>> history = new ArrayList<>();
+        int status = 0;
+        for (OrderEvent event : orderEventRepository.findHistory(orderId)) {
+            status = event.applyTo(status);
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("at", event.getCreatedAt());
+            entry.put("set", Order.flagNames(event.getSetBits()));
+            entry.put("cleared", Order.flagNames(event.getClearBits()));
+            entry.put("status", status);
+            history.add(entry);
+        }
+        return history;
+    }
+
+    // Worker gọi để cập nhật trạng thái nền của đơn hàng: chỉ bật bit bằng 1 câu UPDATE
+    // có điều kiện, nên các stage pipeline chạy song song không ghi đè cờ của nhau.
     @Transactional
     public void updateOrderStatusProcessing(Long orderId,
                                             boolean emailSent,
                                             boolean stockUpdated,
                                             boolean logWritten) {
-        Order order = getOrder(orderId);
-
-        if (emailSent) {
-            order.setEmailSent(true);
+        int bits = (emailSent ? Order.EMAIL_SENT : 0)
+                | (stockUpdated ? Order.STOCK_UPDATED : 0)
+                | (logWritten ? Order.LOG_WRITTEN : 0);
+        List<StatusChange> changes = applyStatus(List.of(orderId), bits, 0, 0);
+        // không đổi gì: cờ đã bật sẵn (message giao lại) hoặc đơn không tồn tại
+        if (changes.isEmpty() && !orderRepository.existsById(orderId)) {
+            throw new RuntimeException("Order not found: " + orderId);
         }
-        if (stockUpdated) {
-            order.setStockUpdated(true);
+    }
+
+    // Consumer xử lý kho cho một lô đơn trong 1 transaction, idempotent với message giao lại:
+    //  1. khoá các đơn còn chờ trong DB (nguồn sự thật); đơn đã xử lý / đã huỷ bị bỏ qua
+    //  2. trừ kho gom theo productId
+    //  3. complete = true ghi cờ hoàn tất, false (pipeline) chỉ ghi stockUpdated
+    // Trừ kho và ghi cờ cùng commit hoặc cùng rollback, nên consumer chết giữa chừng
+    // rồi nhận lại message cũng không trừ kho 2 lần.
+    // Đơn thiếu hàng có id trong canWaitIds không bị ghi lỗi kho mà giữ nguyên trạng thái chờ
+    // (consumer gửi lại message để thử sau). Đơn thiếu hàng còn lại vào hàng chờ BackorderService,
+    // được giao hàng khi nhập thêm.
+    // Pipeline: đơn đã vào hàng chờ chưa có cờ nào cho tới stage log nên vẫn "còn chờ"; message
+    // giao lại của đơn đó không trừ kho lại, không ghi thêm dòng chờ, chỉ trả về trong stockFailed.
+    // Tương tự, đơn đã trừ kho nhưng chưa ghi log (sự kiện stage có thể đã mất) trả về trong
+    // stockDone để consumer gửi lại sự kiện stage.
+    @Transactional
+    public StockOutcome processStock(Collection<Order> orders, boolean complete, Set<Long> canWaitIds) {
+        Set<Long> pending = new HashSet<>(orderRepository.lockPending(
+                orders.stream().map(Order::getId).toList()));
+        Set<Long> backordered = complete ? Set.of() : backorderService.findWaiting(pending);
+
+        Set<Long> awaitingLog = complete || pending.size() == orders.size()
+                ? Set.of()
+                : new HashSet<>(orderRepository.findAwaitingLog(orders.stream()
+                        .map(Order::getId).filter(id -> !pending.contains(id)).toList()));
+
+        List<Long> skippedIds = new ArrayList<>();
+        List<Order> alreadyBackordered = new ArrayList<>();
+        List<Order> stockDone = new ArrayList<>();
+        // Trừ kho theo thứ tự productId (trong mỗi product vẫn theo thứ tự đến): các consumer và
+        // huỷ hàng loạt chạy song song khoá dòng kho cùng thứ tự, không deadlock lẫn nhau
+        Map<String, List<Order>> ordersByProduct = new TreeMap<>();
+        for (Order order : orders) {
+            if (awaitingLog.contains(order.getId())) {
+                stockDone.add(order);
+            } else if (!pending.contains(order.getId())) {
+                skippedIds.add(order.getId());
+            } else if (backordered.contains(order.getId())) {
+                alreadyBackordered.add(order);
+            } else {
+                ordersByProduct.computeIfAbsent(order.getProductId(), k -> new ArrayList<>()).add(order);
+            }
         }
-        if (logWritten) {
-            order.setLogWritten(true);
+
+        List<Order> stockOk = new ArrayList<>();
+        List<Order> stockFailed = new ArrayList<>();
+        List<Order> stockWaiting = new ArrayList<>();
+        ordersByProduct.forEach((productId, productOrders) -> {
+            // product đang có đơn chờ hàng: đơn mới xếp cuối hàng, không chen lên trước
+            if (backorderService.hasWaiting(productId)) {
+                stockFailed.addAll(productOrders);
+                return;
+            }
+            List<Boolean> results = inventoryService.decreaseStockBatch(
+                    productId, productOrders.stream().map(Order::getQuantity).toList());
+            for (int i = 0; i < productOrders.size(); i++) {
+                Order order = productOrders.get(i);
+                if (results.get(i)) {
+                    stockOk.add(order);
+                } else {
+                    (canWaitIds.contains(order.getId()) ? stockWaiting : stockFailed).add(order);
+                }
+            }
+        });
+
+        List<Long> stockOkIds = stockOk.stream().map(Order::getId).toList();
+        if (complete) {
+            completeProcessing(stockOkIds, stockFailed.stream().map(Order::getId).toList());
+        } else {
+            markStockUpdatedBatch(stockOkIds);
         }
+        backorderService.add(stockFailed);
+        stockFailed.addAll(alreadyBackordered);
+        return new StockOutcome(stockOk, stockFailed, stockWaiting, stockDone, skippedIds);
+    }
 
-        orderRepository.save(order);
+    // Consumer ghi kết quả xử lý cho một hoặc nhiều đơn trong 1 transaction (bulk UPDATE),
+    // không cần đọc lại Order. Câu UPDATE chỉ chạm đơn đang chờ (chưa huỷ, chưa xử lý xong)
+    // và trả về trạng thái trước của từng đơn để cộng vào thống kê.
+    @Transactional
+    public void completeProcessing(Collection<Long> stockOkIds,
+                                   Collection<Long> stockFailedIds) {
+        int pendingOnly = Order.CANCELLED | Order.LOG_WRITTEN;
+        applyStatus(stockOkIds, Order.EMAIL_SENT | Order.STOCK_UPDATED | Order.LOG_WRITTEN, 0, pendingOnly);
+        applyStatus(stockFailedIds, Order.EMAIL_SENT | Order.LOG_WRITTEN, 0, pendingOnly);
+    }
+
+    // Pipeline (batch): stage kho chỉ ghi cờ stockUpdated cho các đơn trừ kho thành công
+    @Transactional
+    public void markStockUpdatedBatch(Collection<Long> orderIds) {
+        applyStatus(orderIds, Order.STOCK_UPDATED, 0, Order.CANCELLED | Order.STOCK_UPDATED);
+    }
+
+    // Đổi status, ghi event, cập nhật thống kê và đẩy thay đổi qua SSE (sau khi commit)
+    private List<StatusChange> applyStatus(Collection<Long> ids, int set, int clear, int forbidden) {
+        List<StatusChange> changes = orderRepository.applyStatus(ids, set, clear, forbidden);
+        statsTracker.apply(changes);
+        updateStream.statusChanged(changes);
+        return changes;
     }
 
     // =============== HUỶ ĐƠN + KHÔI PHỤC LẠI KHO ===============
 
     @Transactional
     public Order cancelOrder(Long orderId) {
-        Order order = getOrder(orderId);
+        cancelOrders(List.of(orderId));
+        // đơn vừa huỷ đã nằm trong persistence context, không đọc lại DB
+        return getOrder(orderId);
+    }
 
-        // Idempotent: nếu đã huỷ rồi thì trả luôn, không làm gì thêm
-        if (order.isCancelled()) {
-            return order;
+    // Huỷ một hoặc nhiều đơn trong 1 transaction, không đọc-rồi-ghi:
+    //  1. 1 câu UPDATE có điều kiện (compare-and-set trên status) bật cancelled, tắt stockUpdated
+    //     cho các đơn chưa huỷ; trạng thái trước cho biết đơn nào đã được trừ kho.
+    //     Consumer đang khoá đơn thì câu UPDATE chờ và thấy kết quả của consumer; đơn huỷ trước
+    //     thì consumer bỏ qua, không trừ kho.
+    //  2. Kho của các đơn đã trừ được cộng lại gom theo product (mỗi product 1 lần), theo thứ tự
+    //     productId để các lần huỷ hàng loạt song song khoá dòng kho cùng thứ tự.
+    //  3. Đơn đang chờ hàng được bỏ khỏi hàng chờ backorder.
+    // Đơn đã huỷ từ trước hoặc không tồn tại thì bỏ qua (idempotent). Trả về số đơn vừa huỷ.
+    @Transactional
+    public int cancelOrders(Collection<Long> orderIds) {
+        List<StatusChange> changes = applyStatus(orderIds, Order.CANCELLED, Order.STOCK_UPDATED, Order.CANCELLED);
+        if (changes.isEmpty()) {
+            return 0;
         }
+        List<Long> cancelledIds = changes.stream().map(StatusChange::orderId).toList();
+        Map<Long, Order> orders = orderRepository.findAllById(cancelledIds).stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity()));
 
-        // Nếu kho đã trừ thành công trước đó thì cộng lại
-        if (order.isStockUpdated()
-                && order.getProductId() != null
-                && order.getQuantity() > 0) {
-
-            inventoryService.increaseStock(order.getProductId(), order.getQuantity());
-
-            // đánh dấu lại để lần sau không hiểu nhầm là đã trừ kho
-            order.setStockUpdated(false);
+        Map<String, Integer> restock = new TreeMap<>();
+        List<Order> waiting = new ArrayList<>();
+        for (StatusChange change : changes) {
+            Order order = orders.get(change.orderId());
+            if ((change.before() & Order.STOCK_UPDATED) != 0) {
+                if (order.getProductId() != null && order.getQuantity() > 0) {
+                    restock.merge(order.getProductId(), order.getQuantity(), Integer::sum);
+                }
+            } else if (backorderService.isWaiting(order.getProductId(), order.getId())) {
+                waiting.add(order);
+            }
         }
-
-        order.setCancelled(true);
-        return orderRepository.save(order);
+        restock.forEach(inventoryService::increaseStock);
+        backorderService.remove(waiting);
+        events.publishEvent(new OrdersCancelledEvent(cancelledIds));
+        return changes.size();
     }
 
     // ================== THỐNG KÊ ĐƠN HÀNG ==================
 
+    // O(1): đọc từ bộ đếm tăng dần, không quét bảng orders
     public Map<String, Long> getOrderStats() {
-        List<Order> orders = orderRepository.findAll();
-
-        long total = orders.size();
-
-        long cancelled = orders.stream()
-                .filter(Order::isCancelled)
-                .count();
-
-        // Đơn xử lý nền thành công: chưa bị huỷ và cả 3 cờ đều true
-        long processed = orders.stream()
-                .filter(o -> !o.isCancelled()
-                        && o.isEmailSent()
-                        && o.isStockUpdated()
-                        && o.isLogWritten())
-                .count();
-
-        // Đơn bị lỗi kho: chưa bị huỷ, email + log đã làm nhưng kho không cập nhật được
-        long failedStock = orders.stream()
-                .filter(o -> !o.isCancelled()
-                        && o.isEmailSent()
-                        && !o.isStockUpdated()
-                        && o.isLogWritten())
-                .count();
-
-        // Đơn đang chờ: phần còn lại
-        long pending = total - processed - failedStock - cancelled;
-
-        return Map.of(
-                "totalOrders", total,
-                "processedOrders", processed,
-                "pendingOrders", pending,
-                "failedOrders", failedStock,
-                "cancelledOrders", cancelled
-        );
+        return statsTracker.snapshot();
     }
 }
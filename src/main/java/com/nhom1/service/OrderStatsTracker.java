@@ -0,0 +1,126 @@
+package com.nhom1.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import com.nhom1.entity.Order;
+import com.nhom1.repository.OrderRepository;
+import com.nhom1.repository.OrderRepositoryCustom.StatusChange;
+
+import jakarta.annotation.PostConstruct;
+
+// Bộ đếm thống kê đơn hàng cập nhật tăng dần theo từng chuyển trạng thái,
+// thay cho việc quét cả bảng orders mỗi lần gọi /orders/stats.
+// Khi khởi động dựng lại từ số đơn theo từng giá trị status (1 câu GROUP BY).
+@Component
+@DependsOn("orderStatusMigration")
+public class OrderStatsTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderStatsTracker.class);
+
+    // Trạng thái tổng hợp của một đơn, cùng định nghĩa với thống kê cũ
+    public enum Status {
+        PENDING, PROCESSED, STOCK_FAILED, CANCELLED;
+
+        public static Status of(Order order) {
+            return of(order.getStatus());
+        }
+
+        // Từ giá trị cột status (các bit trong Order)
+        public static Status of(int status) {
+            if ((status & Order.CANCELLED) != 0) {
+                return CANCELLED;
+            }
+            if ((status & Order.PROCESSED_MASK) == Order.PROCESSED) {
+                return PROCESSED;
+            }
+            int done = Order.EMAIL_SENT | Order.LOG_WRITTEN;
+            return (status & done) == done ? STOCK_FAILED : PENDING;
+        }
+    }
+
+    private final OrderRepository orderRepository;
+
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong[] counters = new AtomicLong[Status.values().length];
+
+    public OrderStatsTracker(OrderRepository orderRepository) {
+        this.orderRepository = orderRepository;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new AtomicLong();
+        }
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        long[] counts = new long[counters.length];
+        long all = 0;
+        for (OrderRepository.StatusCount row : orderRepository.countByStatus()) {
+            counts[Status.of(row.getStatus()).ordinal()] += row.getCount();
+            all += row.getCount();
+        }
+        total.set(all);
+        for (int i = 0; i < counters.length; i++) {
+            counters[i].set(counts[i]);
+        }
+        log.info("[STATS] Dựng lại thống kê: {}", snapshot());
+    }
+
+    // Đơn mới được tạo (tính sau khi transaction commit)
+    public void orderCreated() {
+        orderCreated(1);
+    }
+
+    public void orderCreated(int count) {
+        TransactionHooks.afterCommit(() -> {
+            total.addAndGet(count);
+            counters[Status.PENDING.ordinal()].addAndGet(count);
+        });
+    }
+
+    // Đơn chuyển từ trạng thái from sang to (tính sau khi transaction commit)
+    public void transition(Status from, Status to) {
+        transition(from, to, 1);
+    }
+
+    // count đơn cùng chuyển từ from sang to (tính sau khi transaction commit)
+    public void transition(Status from, Status to, int count) {
+        if (from == to || count == 0) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> {
+            counters[from.ordinal()].addAndGet(-count);
+            counters[to.ordinal()].addAndGet(count);
+        });
+    }
+
+    // Các đơn vừa đổi status (kết quả OrderRepository.applyStatus), gom theo cặp trạng thái
+    public void apply(Collection<StatusChange> changes) {
+        int[][] moves = new int[counters.length][counters.length];
+        for (StatusChange change : changes) {
+            moves[Status.of(change.before()).ordinal()][Status.of(change.after()).ordinal()]++;
+        }
+        Status[] statuses = Status.values();
+        for (Status from : statuses) {
+            for (Status to : statuses) {
+                transition(from, to, moves[from.ordinal()][to.ordinal()]);
+            }
+        }
+    }
+
+    public Map<String, Long> snapshot() {
+        return Map.of(
+                "totalOrders", total.get(),
+                "processedOrders", counters[Status.PROCESSED.ordinal()].get(),
+                "pendingOrders", counters[Status.PENDING.ordinal()].get(),
+                "failedOrders", counters[Status.STOCK_FAILED.ordinal()].get(),
+                "cancelledOrders", counters[Status.CANCELLED.ordinal()].get()
+        );
+    }
+}
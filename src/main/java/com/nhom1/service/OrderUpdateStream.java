@@ -0,0 +1,254 @@
+package com.nhom1.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.nhom1.entity.Order;
+import com.nhom1.repository.OrderRepositoryCustom.StatusChange;
+
+import jakarta.annotation.PreDestroy;
+
+// Đẩy thay đổi trạng thái đơn và thống kê tới dashboard qua SSE (GET /orders/stream),
+// thay cho việc trình duyệt poll /orders, /orders/stats, /orders/{id}/status.
+//
+// Thay đổi được gom theo orderId (bản sau ghi đè trường của bản trước) và gửi thành
+// 1 frame mỗi chu kỳ flush, nên 1 đợt burst vẫn chỉ là 1 frame. Thống kê lấy từ
+// OrderStatsTracker (trong RAM), chỉ gửi khi khác frame trước. Không có ai subscribe
+// thì không ghi nhận gì cả.
+//
+// Thread flush chỉ xếp frame vào hàng đợi riêng của từng subscriber; việc ghi ra socket chạy
+// trên virtual thread riêng của subscriber đó. Client chậm hoặc treo (half-open) để hàng đợi
+// đầy app.events.max-queued-frames frame thì bị ngắt, không chặn flush của scheduler.
+@Component
+public class OrderUpdateStream {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderUpdateStream.class);
+
+    static final String EVENT_NAME = "orders";
+
+    // frame đặc biệt trong hàng đợi: gửi comment SSE thay vì event
+    private static final Map<String, Object> HEARTBEAT = Map.of();
+
+    private final OrderStatsTracker statsTracker;
+    private final long emitterTimeoutMs;
+    private final long heartbeatMs;
+    private final int maxQueuedFrames;
+    private final ExecutorService sender = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("sse-", 0).factory());
+
+    private final List<Subscriber> emitters = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Long, Map<String, Object>> pending = new ConcurrentHashMap<>();
+
+    // chỉ thread flush đọc/ghi
+    private Map<String, Long> lastStats;
+    private long lastSentAt;
+
+    public OrderUpdateStream(OrderStatsTracker statsTracker,
+                             @Value("${app.events.emitter-timeout-ms:1800000}") long emitterTimeoutMs,
+                             @Value("${app.events.heartbeat-ms:15000}") long heartbeatMs,
+                             @Value("${app.events.max-queued-frames:32}") int maxQueuedFrames) {
+        this.statsTracker = statsTracker;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.heartbeatMs = heartbeatMs;
+        this.maxQueuedFrames = Math.max(1, maxQueuedFrames);
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscriber.close());
+        emitters.add(subscriber);
+
+        // frame đầu tiên: thống kê hiện tại để client không phải gọi /orders/stats
+        subscriber.offer(frame(List.of(), statsTracker.snapshot()));
+        return emitter;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    public int getSubscriberCount() {
+        return emitters.size();
+    }
+
+    // ===== Ghi nhận thay đổi (áp dụng sau khi transaction commit) =====
+
+    public void orderCreated(Order order) {
+        if (emitters.isEmpty()) {
+            return;
+        }
+        Map<String, Object> patch = flags(order.getStatus());
+        patch.put("customerName", order.getCustomerName());
+        patch.put("productId", order.getProductId());
+        patch.put("quantity", order.getQuantity());
+        patch.put("totalPrice", order.getTotalPrice());
+        patch.put("createdAt", order.getCreatedAt());
+        patch.put("created", true);
+        TransactionHooks.afterCommit(() -> merge(order.getId(), patch));
+    }
+
+    public void ordersCreated(Collection<Order> orders) {
+        orders.forEach(this::orderCreated);
+    }
+
+    // Các đơn vừa đổi status (kết quả OrderRepository.applyStatus): gửi cờ theo status mới,
+    // không cần đọc lại Order
+    public void statusChanged(Collection<StatusChange> changes) {
+        if (emitters.isEmpty() || changes.isEmpty()) {
+            return;
+        }
+        List<StatusChange> copy = List.copyOf(changes);
+        TransactionHooks.afterCommit(() -> copy.forEach(change -> merge(change.orderId(), flags(change.after()))));
+    }
+
+    // ===== Flush =====
+
+    @Scheduled(fixedDelayString = "${app.events.flush-interval-ms:250}")
+    public void flush() {
+        if (emitters.isEmpty()) {
+            pending.clear();
+            // subscriber mới đã nhận thống kê hiện tại ngay khi kết nối
+            lastStats = statsTracker.snapshot();
+            return;
+        }
+
+        List<Map<String, Object>> orders = new ArrayList<>();
+        for (Long id : pending.keySet()) {
+            Map<String, Object> patch = pending.remove(id);
+            if (patch != null) {
+                orders.add(patch);
+            }
+        }
+        Map<String, Long> stats = statsTracker.snapshot();
+        boolean statsChanged = !stats.equals(lastStats);
+
+        long now = System.currentTimeMillis();
+        if (orders.isEmpty() && !statsChanged) {
+            if (now - lastSentAt >= heartbeatMs) {
+                // comment SSE: giữ kết nối qua proxy và phát hiện client đã đóng tab
+                emitters.forEach(subscriber -> subscriber.offer(HEARTBEAT));
+                lastSentAt = now;
+            }
+            return;
+        }
+
+        Map<String, Object> frame = frame(orders, statsChanged ? stats : null);
+        emitters.forEach(subscriber -> subscriber.offer(frame));
+        lastStats = stats;
+        lastSentAt = now;
+    }
+
+    private void merge(Long orderId, Map<String, Object> patch) {
+        pending.merge(orderId, withId(orderId, patch), (current, next) -> {
+            Map<String, Object> merged = new LinkedHashMap<>(current);
+            merged.putAll(next);
+            return merged;
+        });
+    }
+
+    private static Map<String, Object> withId(Long orderId, Map<String, Object> patch) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", orderId);
+        result.putAll(patch);
+        return result;
+    }
+
+    private static Map<String, Object> flags(int status) {
+        Map<String, Object> flags = new HashMap<>();
+        flags.put("emailSent", (status & Order.EMAIL_SENT) != 0);
+        flags.put("stockUpdated", (status & Order.STOCK_UPDATED) != 0);
+        flags.put("logWritten", (status & Order.LOG_WRITTEN) != 0);
+        flags.put("cancelled", (status & Order.CANCELLED) != 0);
+        return flags;
+    }
+
+    private static Map<String, Object> frame(List<Map<String, Object>> orders, Map<String, Long> stats) {
+        Map<String, Object> frame = new LinkedHashMap<>();
+        frame.put("orders", orders);
+        if (stats != null) {
+            frame.put("stats", stats);
+        }
+        return frame;
+    }
+
+    // 1 kết nối SSE: hàng đợi frame có giới hạn, tối đa 1 task gửi đang chạy tại mỗi thời điểm
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final ArrayBlockingQueue<Map<String, Object>> queue = new ArrayBlockingQueue<>(maxQueuedFrames);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(Map<String, Object> frame) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(frame)) {
+                drop(new IOException("client chậm, hàng đợi đầy " + maxQueuedFrames + " frame"));
+                return;
+            }
+            if (sending.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                do {
+                    Map<String, Object> frame;
+                    while (!closed && (frame = queue.poll()) != null) {
+                        emitter.send(frame == HEARTBEAT
+                                ? SseEmitter.event().comment("ping")
+                                : SseEmitter.event().name(EVENT_NAME).data(frame));
+                    }
+                    sending.set(false);
+                    // frame xếp vào sau lần poll cuối nhưng trước khi bỏ cờ: gửi tiếp
+                } while (!closed && !queue.isEmpty() && sending.compareAndSet(false, true));
+            } catch (IOException | IllegalStateException e) {
+                sending.set(false);
+                drop(e);
+            }
+        }
+
+        void close() {
+            closed = true;
+            emitters.remove(this);
+            queue.clear();
+        }
+
+        private void drop(Exception e) {
+            if (closed) {
+                return;
+            }
+            log.debug("[SSE] Bỏ subscriber đã ngắt kết nối hoặc quá chậm: {}", e.getMessage());
+            close();
+            emitter.completeWithError(e);
+        }
+    }
+}
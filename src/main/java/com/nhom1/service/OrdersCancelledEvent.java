@@ -0,0 +1,18 @@
+package com.nhom1.service;
+
+import java.util.List;
+
+// Các đơn vừa bị huỷ. Sau khi transaction commit, consumer ghi nhận để bỏ qua message
+// OrderCreated của các đơn này mà không chạm DB.
+public class OrdersCancelledEvent {
+
+    private final List<Long> orderIds;
+
+    public OrdersCancelledEvent(List<Long> orderIds) {
+        this.orderIds = orderIds;
+    }
+
+    public List<Long> getOrderIds() {
+        return orderIds;
+    }
+}
@@ -0,0 +1,16 @@
+package com.nhom1.service;
+
+// Tồn kho của productId vừa tăng (nhập thêm, huỷ đơn trả hàng, sửa số lượng kho).
+// Được xử lý sau khi transaction commit để phân bổ hàng cho các đơn đang chờ.
+public class StockIncreasedEvent {
+
+    private final String productId;
+
+    public StockIncreasedEvent(String productId) {
+        this.productId = productId;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+}
@@ -0,0 +1,342 @@
+package com.nhom1.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.nhom1.entity.Inventory;
+import com.nhom1.repository.InventoryRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Giữ tồn kho trong RAM để trừ/cộng kho bằng CAS, không chạm DB trên hot path.
+// Bộ đếm được chia thành nhiều stripe theo hash của productId; mỗi stripe có tập
+// product "bẩn" riêng. Định kỳ flush phần chênh lệch (delta) xuống bảng inventory
+// trong 1 transaction. Khi khởi động nạp lại toàn bộ tồn kho từ DB.
+//
+// Lưu ý: chỉ đúng khi một instance ứng dụng sở hữu bảng inventory; GET /inventory
+// đọc từ DB nên có thể trễ tối đa một chu kỳ flush.
+//
+// Mỗi stripe có 1 read-write lock: giữ chỗ / trả hàng lấy read lock (nhiều thread song song,
+// vẫn dùng CAS), ghi đè tồn kho từ màn hình kho (evict) giữ write lock tới hết transaction.
+// Flush cũng giữ read lock của mọi stripe từ lúc lấy delta tới khi transaction flush kết thúc,
+// nên evict không chen vào giữa (không thấy delta 0 rồi bị flush cộng delta cũ lên giá trị mới).
+@Component
+public class StockReservationEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(StockReservationEngine.class);
+
+    private final InventoryRepository inventoryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final InventoryCache inventoryCache;
+    private final boolean enabled;
+    private final Stripe[] stripes;
+
+    public StockReservationEngine(InventoryRepository inventoryRepository,
+                                  TransactionTemplate transactionTemplate,
+                                  InventoryCache inventoryCache,
+                                  @Value("${app.inventory.reservation.enabled:false}") boolean enabled,
+                                  @Value("${app.inventory.reservation.stripes:16}") int stripeCount) {
+        this.inventoryRepository = inventoryRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.inventoryCache = inventoryCache;
+        this.enabled = enabled;
+        // làm tròn lên luỹ thừa của 2 để chọn stripe bằng phép AND
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe(i);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Nạp tồn kho từ DB khi khởi động, trước khi listener container chạy (container start
+    // ở pha lifecycle, sau khi mọi bean đã khởi tạo). putIfAbsent: không ghi đè bộ đếm đã có.
+    @PostConstruct
+    public void recover() {
+        if (!enabled) {
+            return;
+        }
+        int count = 0;
+        for (Inventory inv : inventoryRepository.findAll()) {
+            stripeFor(inv.getProductId()).counters.putIfAbsent(inv.getProductId(), new Counter(inv.getQuantity()));
+            count++;
+        }
+        log.info("[RESERVATION] Đã nạp tồn kho của {} product vào bộ nhớ", count);
+    }
+
+    // Giữ chỗ qty sản phẩm. Trả về false nếu không đủ hàng hoặc product chưa có trong kho.
+    public boolean reserve(String productId, int qty) {
+        Stripe stripe = stripeFor(productId);
+        stripe.lock.readLock().lock();
+        try {
+            Counter counter = counterFor(stripe, productId);
+            if (counter == null) {
+                return false;
+            }
+
+            while (true) {
+                int current = counter.available.get();
+                if (current < qty) {
+                    return false;
+                }
+                if (counter.available.compareAndSet(current, current - qty)) {
+                    counter.pendingDelta.addAndGet(-qty);
+                    stripe.dirty.add(productId);
+                    return true;
+                }
+            }
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    // Số lượng còn giữ được; 0 nếu product chưa có trong kho
+    public int available(String productId) {
+        Stripe stripe = stripeFor(productId);
+        stripe.lock.readLock().lock();
+        try {
+            Counter counter = counterFor(stripe, productId);
+            return counter == null ? 0 : counter.available.get();
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    // Rút lại qty đã cộng bằng release (transaction nhập hàng bị rollback). Không kiểm tra đủ hàng:
+    // nếu phần vừa nhập đã được giữ chỗ thì bộ đếm âm, phản ánh đúng số đã bán vượt.
+    public void retract(String productId, int qty) {
+        Stripe stripe = stripeFor(productId);
+        stripe.lock.readLock().lock();
+        try {
+            Counter counter = stripe.counters.get(productId);
+            if (counter == null) {
+                // bộ đếm đã bị ghi đè (evict) sau khi nhập: giá trị mới lấy từ DB, không còn gì để rút
+                return;
+            }
+            if (counter.available.addAndGet(-qty) < 0) {
+                log.warn("[RESERVATION] Rút lại {} của product {} sau rollback: tồn kho âm {}",
+                        qty, productId, counter.available.get());
+            }
+            counter.pendingDelta.addAndGet(-qty);
+            stripe.dirty.add(productId);
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    // Trả lại / nhập thêm qty. Trả về false nếu product chưa có trong kho (caller tự tạo dòng DB).
+    public boolean release(String productId, int qty) {
+        Stripe stripe = stripeFor(productId);
+        stripe.lock.readLock().lock();
+        try {
+            Counter counter = counterFor(stripe, productId);
+            if (counter == null) {
+                return false;
+            }
+            counter.available.addAndGet(qty);
+            counter.pendingDelta.addAndGet(qty);
+            stripe.dirty.add(productId);
+            return true;
+        } finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    // Tồn kho của các product sắp bị ghi đè trực tiếp (tạo/sửa/xoá qua màn hình kho), gọi trong
+    // transaction ghi đè trước khi đọc/ghi dòng inventory:
+    // - khoá write lock các stripe liên quan (theo thứ tự stripe, tránh deadlock giữa 2 lần ghi đè)
+    //   tới khi transaction kết thúc, nên không thread nào nạp lại giá trị DB chưa commit;
+    // - delta chưa flush được ghi xuống DB ngay trong transaction này, rồi bỏ bộ đếm.
+    // Commit: lần truy cập sau nạp giá trị mới từ DB. Rollback: đặt lại bộ đếm cũ cùng delta.
+    public void evict(String... productIds) {
+        if (!enabled) {
+            return;
+        }
+        Stripe[] locked = Arrays.stream(productIds)
+                .map(this::stripeFor)
+                .distinct()
+                .sorted((a, b) -> Integer.compare(a.index, b.index))
+                .toArray(Stripe[]::new);
+        for (Stripe stripe : locked) {
+            stripe.lock.writeLock().lock();
+        }
+
+        Map<String, Counter> removed = new LinkedHashMap<>();
+        try {
+            for (String productId : productIds) {
+                Stripe stripe = stripeFor(productId);
+                Counter counter = stripe.counters.remove(productId);
+                if (counter == null) {
+                    continue;
+                }
+                removed.put(productId, counter);
+                int delta = counter.pendingDelta.getAndSet(0);
+                counter.flushedOnEvict = delta;
+                if (delta != 0) {
+                    writeDelta(productId, delta);
+                }
+            }
+        } catch (RuntimeException e) {
+            restore(removed);
+            unlock(locked);
+            throw e;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            unlock(locked);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    restore(removed);
+                }
+                unlock(locked);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.inventory.reservation.flush-interval-ms:200}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+
+        // theo thứ tự stripe như evict; read lock không chặn reserve/release
+        for (Stripe stripe : stripes) {
+            stripe.lock.readLock().lock();
+        }
+        try {
+            flushLocked();
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].lock.readLock().unlock();
+            }
+        }
+    }
+
+    private void flushLocked() {
+        Map<String, Integer> deltas = new LinkedHashMap<>();
+        for (Stripe stripe : stripes) {
+            for (String productId : stripe.dirty) {
+                stripe.dirty.remove(productId);
+                Counter counter = stripe.counters.get(productId);
+                if (counter == null) {
+                    continue;
+                }
+                int delta = counter.pendingDelta.getAndSet(0);
+                if (delta != 0) {
+                    deltas.put(productId, delta);
+                }
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    deltas.forEach(inventoryRepository::addQuantity));
+            deltas.keySet().forEach(inventoryCache::invalidate);
+            log.debug("[RESERVATION] Flush {} product xuống DB", deltas.size());
+        } catch (RuntimeException e) {
+            // ghi DB lỗi: trả delta lại bộ đếm để lần flush sau thử lại
+            log.warn("[RESERVATION] Flush thất bại, sẽ thử lại: {}", e.getMessage());
+            deltas.forEach((productId, delta) -> {
+                Stripe stripe = stripeFor(productId);
+                Counter counter = stripe.counters.get(productId);
+                if (counter != null) {
+                    counter.pendingDelta.addAndGet(delta);
+                    stripe.dirty.add(productId);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    // Ghi delta chờ flush của bộ đếm bị bỏ; ngoài transaction thì tự mở transaction riêng
+    private void writeDelta(String productId, int delta) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            inventoryRepository.addQuantity(productId, delta);
+        } else {
+            transactionTemplate.executeWithoutResult(status -> inventoryRepository.addQuantity(productId, delta));
+        }
+    }
+
+    // Transaction ghi đè rollback: DB vẫn là giá trị cũ nên bộ đếm cũ vẫn đúng; phần delta đã
+    // ghi trong transaction bị huỷ nên đưa lại vào delta chờ flush
+    private void restore(Map<String, Counter> removed) {
+        removed.forEach((productId, counter) -> {
+            Stripe stripe = stripeFor(productId);
+            counter.pendingDelta.addAndGet(counter.flushedOnEvict);
+            counter.flushedOnEvict = 0;
+            stripe.counters.put(productId, counter);
+            if (counter.pendingDelta.get() != 0) {
+                stripe.dirty.add(productId);
+            }
+        });
+    }
+
+    private static void unlock(Stripe[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            locked[i].lock.writeLock().unlock();
+        }
+    }
+
+    private Stripe stripeFor(String productId) {
+        int h = productId.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+    }
+
+    private Counter counterFor(Stripe stripe, String productId) {
+        return stripe.counters.computeIfAbsent(productId, id ->
+                inventoryRepository.findByProductId(id)
+                        .map(inv -> new Counter(inv.getQuantity()))
+                        .orElse(null));
+    }
+
+    private static final class Counter {
+        final AtomicInteger available;
+        final AtomicInteger pendingDelta = new AtomicInteger();
+        // delta ghi trong transaction ghi đè (để rollback trả lại), chỉ dùng khi giữ write lock
+        int flushedOnEvict;
+
+        Counter(int available) {
+            this.available = new AtomicInteger(available);
+        }
+    }
+
+    private static final class Stripe {
+        final int index;
+        final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+        final Set<String> dirty = ConcurrentHashMap.newKeySet();
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Stripe(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.nhom1.messaging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import com.nhom1.entity.Order;
+import com.nhom1.service.BackorderService;
+import com.nhom1.service.InventoryService;
+import com.nhom1.service.OrderService;
+
+// Message OrderCreated giao lại ở chế độ pipeline, trước khi stage log chạy xong.
+// OrderProducer được mock: không có broker, chỉ kiểm tra sự kiện stage được gửi.
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "app.pipeline.enabled=true")
+class OrderConsumerRedeliveryTest {
+
+    @MockBean
+    private OrderProducer orderProducer;
+
+    // Đơn thiếu hàng đã vào hàng chờ: lần giao lại không trừ kho, không ghi thêm dòng chờ
+    // (trùng idx_backorder_order_id làm rollback cả lô), chỉ gửi lại sự kiện stage
+    @Test
+    void redeliveredBackorderedOrderIsNotBackorderedTwice(@Autowired OrderService orderService,
+                                                          @Autowired InventoryService inventoryService,
+                                                          @Autowired BackorderService backorderService,
+                                                          @Autowired OrderConsumer consumer,
+                                                          @Autowired JdbcTemplate jdbc) {
+        inventoryService.createInventory("P-REDELIVER-BO", 1);
+        Order saved = orderService.createOrder(newOrder("P-REDELIVER-BO", 2));
+        OrderCreatedMessage message = new OrderCreatedMessage(saved.getId(), saved.getCustomerName(),
+                saved.getProductId(), saved.getQuantity());
+
+        consumer.handleOrderCreated(message);
+        consumer.handleOrderCreated(message);
+
+        assertThat(backorderService.isWaiting("P-REDELIVER-BO", saved.getId())).isTrue();
+        assertThat(jdbc.queryForObject("select count(*) from order_backorder where order_id = ?",
+                Integer.class, saved.getId())).isEqualTo(1);
+        assertThat(inventoryService.availableStock("P-REDELIVER-BO")).isEqualTo(1);
+        verify(orderProducer, times(2)).sendStockProcessed(argThat(messages -> messages.size() == 1
+                && messages.get(0).getOrderId().equals(saved.getId())
+                && !messages.get(0).isStockUpdated()));
+    }
+
+    // Sự kiện stage bị nack sau khi transaction kho đã commit: message gốc được giao lại,
+    // lần giao lại không trừ kho nữa nhưng gửi lại sự kiện stage (đơn không bị kẹt ở trạng thái chờ)
+    @Test
+    void redeliveryResendsLostStageEvent(@Autowired OrderService orderService,
+                                         @Autowired InventoryService inventoryService,
+                                         @Autowired OrderConsumer consumer) {
+        inventoryService.createInventory("P-REDELIVER-NACK", 10);
+        Order saved = orderService.createOrder(newOrder("P-REDELIVER-NACK", 2));
+        OrderCreatedMessage message = new OrderCreatedMessage(saved.getId(), saved.getCustomerName(),
+                saved.getProductId(), saved.getQuantity());
+        doThrow(new AmqpException("nack")).doNothing().when(orderProducer).sendStockProcessed(any());
+
+        assertThatThrownBy(() -> consumer.handleOrderCreated(message))
+                .isInstanceOf(AmqpException.class);
+        assertThat(orderService.getOrder(saved.getId()).isStockUpdated()).isTrue();
+        assertThat(orderService.getOrder(saved.getId()).isLogWritten()).isFalse();
+
+        consumer.handleOrderCreated(message);
+
+        assertThat(inventoryService.availableStock("P-REDELIVER-NACK")).isEqualTo(8);
+        verify(orderProducer, times(2)).sendStockProcessed(argThat(messages -> messages.size() == 1
+                && messages.get(0).getOrderId().equals(saved.getId())
+                && messages.get(0).isStockUpdated()));
+    }
+
+    private static Order newOrder(String productId, int quantity) {
+        Order order = new Order();
+        order.setCustomerName("Customer " + productId);
+        order.setProductId(productId);
+        order.setQuantity(quantity);
+        order.setTotalPrice(BigDecimal.TEN);
+        return order;
+    }
+}
@@ -0,0 +1,294 @@
+package com.nhom1.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import com.nhom1.entity.Order;
+import com.nhom1.messaging.OrderConsumer;
+import com.nhom1.messaging.OrderCreatedMessage;
+
+// Kiểm tra bảo toàn tồn kho khi huỷ đơn chạy song song với consumer: các thread consumer xử lý
+// message OrderCreated (kèm message giao lại), các thread huỷ đơn lẻ và huỷ hàng loạt, 1 thread
+// nhập thêm hàng, tất cả cùng lúc trên cùng các product. Tồn kho ban đầu cố ý thiếu để có đơn
+// vào hàng chờ backorder và được giao khi nhập hàng.
+//
+// Sau khi chạy xong, với mỗi product phải có:
+//   tồn kho còn lại + tổng số lượng các đơn đang giữ hàng (stockUpdated) = tồn ban đầu + hàng nhập thêm
+// và: không đơn nào vừa huỷ vừa giữ hàng, mọi đơn chưa huỷ đã được xử lý, đơn lỗi kho đều đang
+// trong hàng chờ, gộp order_event ra đúng status, thống kê trong RAM khớp với DB.
+// Chạy cả 2 chế độ: trừ kho trên DB và StockReservationEngine.
+@SpringBootTest
+@ActiveProfiles("test")
+class CancelConservationTest {
+
+    private static final int ORDERS = 2000;
+    private static final int PRODUCTS = 8;
+    private static final int INITIAL_STOCK = ORDERS / PRODUCTS;
+    private static final int CONSUMERS = 4;
+    private static final int CANCELLERS = 4;
+    private static final int BATCH = 50;
+    private static final double CANCEL_RATIO = 0.3;
+    private static final double DUPLICATE_RATIO = 0.2;
+
+    @Test
+    void cancelsRacingConsumersConserveStock(@Autowired ApplicationContext context) throws Exception {
+        assertThat(run(context, "DB")).isEmpty();
+    }
+
+    @Nested
+    @TestPropertySource(properties = "app.inventory.reservation.enabled=true")
+    class WithReservation {
+
+        @Test
+        void cancelsRacingConsumersConserveStock(@Autowired ApplicationContext context) throws Exception {
+            assertThat(context.getBean(StockReservationEngine.class).isEnabled()).isTrue();
+            assertThat(run(context, "MEM")).isEmpty();
+        }
+    }
+
+    // Trả về danh sách vi phạm (rỗng = bảo toàn)
+    private static List<String> run(ApplicationContext context, String prefix) throws Exception {
+        OrderService orderService = context.getBean(OrderService.class);
+        InventoryService inventoryService = context.getBean(InventoryService.class);
+        OrderConsumer consumer = context.getBean(OrderConsumer.class);
+
+        String[] productIds = new String[PRODUCTS];
+        Map<String, Integer> restocked = new ConcurrentHashMap<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            productIds[i] = "C-" + prefix + "-" + i;
+            inventoryService.createInventory(productIds[i], INITIAL_STOCK);
+            restocked.put(productIds[i], 0);
+        }
+
+        // đơn số lượng 1..3: trung bình 2, nên tồn kho ban đầu chỉ đủ khoảng một nửa
+        List<OrderCreatedMessage> deliveries = new ArrayList<>();
+        List<Long> orderIds = new ArrayList<>(ORDERS);
+        for (int from = 0; from < ORDERS; from += 1000) {
+            List<Order> chunk = new ArrayList<>();
+            for (int i = from; i < Math.min(ORDERS, from + 1000); i++) {
+                Order order = new Order();
+                order.setCustomerName("Customer " + i);
+                order.setProductId(productIds[ThreadLocalRandom.current().nextInt(PRODUCTS)]);
+                order.setQuantity(1 + ThreadLocalRandom.current().nextInt(3));
+                order.setTotalPrice(BigDecimal.TEN);
+                chunk.add(order);
+            }
+            for (Order saved : orderService.createOrders(chunk)) {
+                orderIds.add(saved.getId());
+                OrderCreatedMessage message = new OrderCreatedMessage(saved.getId(), saved.getCustomerName(),
+                        saved.getProductId(), saved.getQuantity(), LocalDateTime.now());
+                deliveries.add(message);
+                if (ThreadLocalRandom.current().nextDouble() < DUPLICATE_RATIO) {
+                    deliveries.add(message);
+                }
+            }
+        }
+        Collections.shuffle(deliveries);
+
+        AtomicInteger nextDelivery = new AtomicInteger();
+        AtomicInteger cancelCalls = new AtomicInteger();
+        AtomicBoolean consuming = new AtomicBoolean(true);
+        int cancelTarget = (int) (ORDERS * CANCEL_RATIO);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(CONSUMERS + CANCELLERS + 1);
+        List<Future<?>> consumerTasks = new ArrayList<>();
+        List<Future<?>> otherTasks = new ArrayList<>();
+        try {
+            for (int t = 0; t < CONSUMERS; t++) {
+                consumerTasks.add(pool.submit(() -> {
+                    start.await();
+                    int from;
+                    while ((from = nextDelivery.getAndAdd(BATCH)) < deliveries.size()) {
+                        List<OrderCreatedMessage> messages =
+                                deliveries.subList(from, Math.min(deliveries.size(), from + BATCH));
+                        // lỗi (ví dụ hết thời gian chờ khoá) thì giao lại cả lô như retry handler
+                        withRetry(() -> {
+                            consumer.handleOrderCreatedBatch(new ArrayList<>(messages));
+                            return null;
+                        });
+                    }
+                    return null;
+                }));
+            }
+            for (int t = 0; t < CANCELLERS; t++) {
+                otherTasks.add(pool.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (cancelCalls.get() < cancelTarget) {
+                        if (random.nextBoolean()) {
+                            Long id = orderIds.get(random.nextInt(orderIds.size()));
+                            withRetry(() -> orderService.cancelOrder(id));
+                            cancelCalls.incrementAndGet();
+                        } else {
+                            List<Long> ids = new ArrayList<>();
+                            for (int i = 0; i < 20; i++) {
+                                ids.add(orderIds.get(random.nextInt(orderIds.size())));
+                            }
+                            withRetry(() -> orderService.cancelOrders(ids));
+                            cancelCalls.addAndGet(ids.size());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            otherTasks.add(pool.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (consuming.get()) {
+                    String productId = productIds[random.nextInt(PRODUCTS)];
+                    int qty = 1 + random.nextInt(20);
+                    withRetry(() -> {
+                        inventoryService.increaseStock(productId, qty);
+                        return null;
+                    });
+                    restocked.merge(productId, qty, Integer::sum);
+                    Thread.sleep(2);
+                }
+                return null;
+            }));
+
+            start.countDown();
+            try {
+                for (Future<?> task : consumerTasks) {
+                    task.get(120, TimeUnit.SECONDS);
+                }
+            } finally {
+                consuming.set(false);
+            }
+            for (Future<?> task : otherTasks) {
+                task.get(120, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return verify(context, productIds, restocked);
+    }
+
+    private static List<String> verify(ApplicationContext context, String[] productIds,
+                                       Map<String, Integer> restocked) throws InterruptedException {
+        InventoryService inventoryService = context.getBean(InventoryService.class);
+        BackorderService backorderService = context.getBean(BackorderService.class);
+        OrderStatsTracker statsTracker = context.getBean(OrderStatsTracker.class);
+        StockReservationEngine reservationEngine = context.getBean(StockReservationEngine.class);
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        List<String> violations = new ArrayList<>();
+
+        Map<String, Long> held = new HashMap<>();
+        Map<Long, Integer> statusById = new HashMap<>();
+        jdbc.query("select id, product_id, quantity, status from orders", rs -> {
+            long id = rs.getLong("id");
+            String productId = rs.getString("product_id");
+            int status = rs.getInt("status");
+            statusById.put(id, status);
+            boolean stock = (status & Order.STOCK_UPDATED) != 0;
+            boolean cancelledOrder = (status & Order.CANCELLED) != 0;
+            if (stock && cancelledOrder) {
+                violations.add("đơn " + id + " vừa huỷ vừa giữ hàng");
+            }
+            if (stock) {
+                held.merge(productId, (long) rs.getInt("quantity"), Long::sum);
+            }
+            if (cancelledOrder) {
+                return;
+            }
+            if ((status & Order.LOG_WRITTEN) == 0) {
+                violations.add("đơn " + id + " chưa huỷ nhưng chưa được xử lý (status=" + status + ")");
+            } else if (!stock && !backorderService.isWaiting(productId, id)) {
+                violations.add("đơn " + id + " lỗi kho nhưng không nằm trong hàng chờ");
+            }
+        });
+
+        if (reservationEngine.isEnabled()) {
+            // flush định kỳ có thể đang ghi dở: chờ nó xong rồi flush phần còn lại
+            Thread.sleep(500);
+            reservationEngine.flush();
+        }
+        for (String productId : productIds) {
+            long expected = (long) INITIAL_STOCK + restocked.get(productId);
+            long available = inventoryService.availableStock(productId);
+            Integer stored = jdbc.queryForObject(
+                    "select quantity from inventory where product_id = ?", Integer.class, productId);
+            long heldQty = held.getOrDefault(productId, 0L);
+            if (available + heldQty != expected) {
+                violations.add(productId + ": còn " + available + " + đang giữ " + heldQty + " != " + expected);
+            }
+            if (stored == null || stored != available) {
+                violations.add(productId + ": DB " + stored + " khác tồn kho hiện hành " + available);
+            }
+            // số lượng mỗi đơn tối đa 3: còn >= 3 mà vẫn có đơn chờ là đã bỏ sót lượt phân bổ
+            if (available >= 3 && backorderService.hasWaiting(productId)) {
+                violations.add(productId + ": còn " + available + " nhưng vẫn có đơn chờ hàng");
+            }
+            if (available < 0) {
+                violations.add(productId + ": tồn kho âm " + available);
+            }
+        }
+
+        Integer backorderRows = jdbc.queryForObject("select count(*) from order_backorder", Integer.class);
+        if (backorderRows == null || backorderRows != backorderService.getWaitingCount()) {
+            violations.add("order_backorder có " + backorderRows + " dòng, hàng chờ trong RAM có "
+                    + backorderService.getWaitingCount());
+        }
+
+        // gộp event của từng đơn theo thứ tự ghi, bắt đầu từ status 0
+        Map<Long, Integer> replayed = new HashMap<>();
+        jdbc.query("select order_id, set_bits, clear_bits from order_event order by id", rs -> {
+            int clearBits = rs.getInt("clear_bits");
+            int setBits = rs.getInt("set_bits");
+            replayed.merge(rs.getLong("order_id"), setBits, (status, ignored) -> (status & ~clearBits) | setBits);
+        });
+        statusById.forEach((id, status) -> {
+            int fromEvents = replayed.getOrDefault(id, 0);
+            if (fromEvents != status) {
+                violations.add("đơn " + id + ": gộp order_event ra " + fromEvents + " nhưng status = " + status);
+            }
+        });
+
+        Map<String, Long> live = statsTracker.snapshot();
+        statsTracker.rebuild();
+        Map<String, Long> rebuilt = statsTracker.snapshot();
+        if (!live.equals(rebuilt)) {
+            violations.add("thống kê trong RAM " + live + " khác DB " + rebuilt);
+        }
+        return violations;
+    }
+
+    private static <T> T withRetry(Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (RuntimeException e) {
+                if (attempt == 5) {
+                    throw e;
+                }
+            }
+        }
+    }
+}
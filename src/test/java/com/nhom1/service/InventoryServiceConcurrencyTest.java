@@ -0,0 +1,131 @@
+package com.nhom1.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Trừ kho song song trên 1 product nóng: 16 thread, tổng nhu cầu vượt xa tồn kho.
+// Sau khi chạy: tồn kho (bộ nhớ và DB) = ban đầu - tổng số lượng các lần trừ thành công,
+// không âm, và đã bán gần hết (còn ít hơn số lượng lớn nhất của 1 lần trừ).
+// Chạy cả 2 chế độ: UPDATE có điều kiện trên DB và StockReservationEngine.
+@SpringBootTest
+@ActiveProfiles("test")
+class InventoryServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int CALLS_PER_THREAD = 200;
+    private static final int MAX_QTY = 3;
+    private static final int INITIAL_STOCK = 2000;
+
+    @Test
+    void concurrentDecrementsKeepStockConsistent(@Autowired InventoryService inventoryService,
+                                                 @Autowired StockReservationEngine reservationEngine,
+                                                 @Autowired JdbcTemplate jdbc) throws Exception {
+        assertStockConserved(inventoryService, reservationEngine, jdbc, "P-HOT-DB");
+    }
+
+    @Nested
+    @TestPropertySource(properties = "app.inventory.reservation.enabled=true")
+    class WithReservation {
+
+        @Test
+        void concurrentDecrementsKeepStockConsistent(@Autowired InventoryService inventoryService,
+                                                     @Autowired StockReservationEngine reservationEngine,
+                                                     @Autowired JdbcTemplate jdbc) throws Exception {
+            assertThat(reservationEngine.isEnabled()).isTrue();
+            assertStockConserved(inventoryService, reservationEngine, jdbc, "P-HOT-MEM");
+        }
+
+        // Nhập hàng trong bộ nhớ rồi transaction rollback: phần đã cộng phải bị rút lại
+        @Test
+        void rolledBackRestockIsRetracted(@Autowired InventoryService inventoryService,
+                                          @Autowired TransactionTemplate transactionTemplate) {
+            inventoryService.createInventory("P-ROLLBACK", 10);
+            transactionTemplate.executeWithoutResult(status -> {
+                inventoryService.increaseStock("P-ROLLBACK", 5);
+                assertThat(inventoryService.availableStock("P-ROLLBACK")).isEqualTo(15);
+                status.setRollbackOnly();
+            });
+            assertThat(inventoryService.availableStock("P-ROLLBACK")).isEqualTo(10);
+        }
+    }
+
+    // Nửa số thread gọi decreaseStock, nửa còn lại gọi decreaseStockBatch với lô 3 đơn
+    private static void assertStockConserved(InventoryService inventoryService,
+                                             StockReservationEngine reservationEngine,
+                                             JdbcTemplate jdbc,
+                                             String productId) throws Exception {
+        inventoryService.createInventory(productId, INITIAL_STOCK);
+
+        AtomicLong decremented = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                boolean batch = t % 2 == 1;
+                workers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                        int qty = 1 + i % MAX_QTY;
+                        if (!batch) {
+                            if (inventoryService.decreaseStock(productId, qty)) {
+                                decremented.addAndGet(qty);
+                            }
+                            continue;
+                        }
+                        List<Integer> quantities = List.of(qty, MAX_QTY, 1);
+                        List<Boolean> results = inventoryService.decreaseStockBatch(productId, quantities);
+                        for (int k = 0; k < quantities.size(); k++) {
+                            if (results.get(k)) {
+                                decremented.addAndGet(quantities.get(k));
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long expected = INITIAL_STOCK - decremented.get();
+        assertThat(expected).isBetween(0L, (long) MAX_QTY - 1);
+        assertThat(inventoryService.availableStock(productId)).isEqualTo(expected);
+
+        // chế độ reservation: DB đuổi kịp sau flush (flush định kỳ có thể đang ghi dở)
+        reservationEngine.flush();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Integer stored = storedQuantity(jdbc, productId);
+        while ((stored == null || stored != expected) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            reservationEngine.flush();
+            stored = storedQuantity(jdbc, productId);
+        }
+        assertThat(stored).isEqualTo((int) expected);
+    }
+
+    private static Integer storedQuantity(JdbcTemplate jdbc, String productId) {
+        return jdbc.queryForObject("select quantity from inventory where product_id = ?", Integer.class, productId);
+    }
+}